@@ -13,6 +13,37 @@ public class Environment {
 	private static final String urlPersistent = "havis.util.core.common.urlPersistent";
 	private static final String path = "havis.util.core.common.path";
 	private static final String max = "havis.util.core.common.max";
+	private static final String logBatchSize = "havis.util.core.common.logBatchSize";
+	private static final String logBatchTimeout = "havis.util.core.common.logBatchTimeout";
+	private static final String logRetentionHigh = "havis.util.core.common.logRetentionHigh";
+	private static final String logRetentionChunk = "havis.util.core.common.logRetentionChunk";
+	private static final String logQueueType = "havis.util.core.common.logQueueType";
+	private static final String logQueueWait = "havis.util.core.common.logQueueWait";
+	private static final String logQueueCapacity = "havis.util.core.common.logQueueCapacity";
+	private static final String logQueuePolicy = "havis.util.core.common.logQueuePolicy";
+	private static final String logQueueLevel = "havis.util.core.common.logQueueLevel";
+	private static final String logQueueTimeout = "havis.util.core.common.logQueueTimeout";
+	private static final String logQueueSample = "havis.util.core.common.logQueueSample";
+	private static final String logDeferThrown = "havis.util.core.common.logDeferThrown";
+	private static final String logFormatCache = "havis.util.core.common.logFormatCache";
+	private static final String logFetchSize = "havis.util.core.common.logFetchSize";
+	private static final String logDurability = "havis.util.core.common.logDurability";
+	private static final String logWriteDelay = "havis.util.core.common.logWriteDelay";
+	private static final String logGroupInterval = "havis.util.core.common.logGroupInterval";
+	private static final String logGroupCount = "havis.util.core.common.logGroupCount";
+	private static final String logTierLevel = "havis.util.core.common.logTierLevel";
+	private static final String logPartitionInterval = "havis.util.core.common.logPartitionInterval";
+	private static final String logPartitionMax = "havis.util.core.common.logPartitionMax";
+	private static final String logRetentionAge = "havis.util.core.common.logRetentionAge";
+	private static final String logSearch = "havis.util.core.common.logSearch";
+	private static final String logStore = "havis.util.core.common.logStore";
+	private static final String logSegmentSize = "havis.util.core.common.logSegmentSize";
+	private static final String logSuppressWindow = "havis.util.core.common.logSuppressWindow";
+	private static final String logRemoteBuffer = "havis.util.core.common.logRemoteBuffer";
+	private static final String logLevelPoll = "havis.util.core.common.logLevelPoll";
+	private static final String processPool = "havis.util.core.common.processPool";
+	private static final String processPoolLimit = "havis.util.core.common.processPoolLimit";
+	private static final String processPoolExpiry = "havis.util.core.common.processPoolExpiry";
 	private static final String wsUri = "havis.util.core.common.wsUri";
 	private static final String rpcTool = "havis.util.core.common.rpcTool";
 	private static final String logConfig = "havis.util.core.common.logConfig";
@@ -39,6 +70,38 @@ public class Environment {
 	public final static String URL = properties.getProperty(url, "jdbc:h2:mem:log");
 	public final static String URL_PERSISTENT = properties.getProperty(urlPersistent, "jdbc:h2:" + PATH + "/log");
 	public final static Integer MAX = Integer.valueOf(properties.getProperty(max, "500"));
+	public final static Integer LOG_BATCH_SIZE = Integer.valueOf(properties.getProperty(logBatchSize, "100"));
+	public final static Integer LOG_BATCH_TIMEOUT = Integer.valueOf(properties.getProperty(logBatchTimeout, "50"));
+	public final static Integer LOG_RETENTION_HIGH = Integer.valueOf(properties.getProperty(logRetentionHigh, "110"));
+	public final static Integer LOG_RETENTION_CHUNK = Integer.valueOf(properties.getProperty(logRetentionChunk, "1000"));
+	public final static String LOG_QUEUE_TYPE = properties.getProperty(logQueueType, "blocking");
+	public final static String LOG_QUEUE_WAIT = properties.getProperty(logQueueWait, "PARK");
+	public final static Integer LOG_QUEUE_CAPACITY = Integer.valueOf(properties.getProperty(logQueueCapacity, "10000"));
+	public final static String LOG_QUEUE_POLICY = properties.getProperty(logQueuePolicy, "DROP_OLDEST");
+	public final static String LOG_QUEUE_LEVEL = properties.getProperty(logQueueLevel, "WARNING");
+	public final static Integer LOG_QUEUE_TIMEOUT = Integer.valueOf(properties.getProperty(logQueueTimeout, "100"));
+	public final static Integer LOG_QUEUE_SAMPLE = Integer.valueOf(properties.getProperty(logQueueSample, "10"));
+	public final static Boolean LOG_DEFER_THROWN = Boolean.valueOf(properties.getProperty(logDeferThrown, "false"));
+	public final static Integer LOG_FORMAT_CACHE = Integer.valueOf(properties.getProperty(logFormatCache, "256"));
+	public final static Integer LOG_FETCH_SIZE = Integer.valueOf(properties.getProperty(logFetchSize, "100"));
+	public final static String LOG_DURABILITY = properties.getProperty(logDurability, "RECORD");
+	public final static Integer LOG_WRITE_DELAY = Integer.valueOf(properties.getProperty(logWriteDelay, "500"));
+	public final static Integer LOG_GROUP_INTERVAL = Integer.valueOf(properties.getProperty(logGroupInterval, "200"));
+	public final static Integer LOG_GROUP_COUNT = Integer.valueOf(properties.getProperty(logGroupCount, "1000"));
+	public final static String LOG_TIER_LEVEL = properties.getProperty(logTierLevel, "");
+	public final static Integer LOG_PARTITION_INTERVAL = Integer.valueOf(properties.getProperty(logPartitionInterval, "0"));
+	public final static Integer LOG_PARTITION_MAX = Integer.valueOf(properties.getProperty(logPartitionMax, "48"));
+	// minutes, the H2 store requires the partition interval to drop by age
+	public final static Integer LOG_RETENTION_AGE = Integer.valueOf(properties.getProperty(logRetentionAge, "0"));
+	public final static Boolean LOG_SEARCH = Boolean.valueOf(properties.getProperty(logSearch, "false"));
+	public final static String LOG_STORE = properties.getProperty(logStore, "h2");
+	public final static Integer LOG_SEGMENT_SIZE = Integer.valueOf(properties.getProperty(logSegmentSize, "4096"));
+	public final static Integer LOG_SUPPRESS_WINDOW = Integer.valueOf(properties.getProperty(logSuppressWindow, "0"));
+	public final static Integer LOG_REMOTE_BUFFER = Integer.valueOf(properties.getProperty(logRemoteBuffer, "1024"));
+	public final static Integer LOG_LEVEL_POLL = Integer.valueOf(properties.getProperty(logLevelPoll, "1000"));
+	public final static Integer PROCESS_POOL = Integer.valueOf(properties.getProperty(processPool, "0"));
+	public final static Integer PROCESS_POOL_LIMIT = Integer.valueOf(properties.getProperty(processPoolLimit, "4"));
+	public final static Integer PROCESS_POOL_EXPIRY = Integer.valueOf(properties.getProperty(processPoolExpiry, "600000"));
 	public final static String WS_URI = properties.getProperty(wsUri, "https://mica/ws/");
 	public final static String RPC_TOOL = properties.getProperty(rpcTool, "mica-rpc");
 	public final static String LOG_CONFIG = properties.getProperty(logConfig, "conf/logging.json");
@@ -0,0 +1,86 @@
+package havis.util.core.common.log;
+
+import java.util.Collection;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Log queue based on an {@link ArrayBlockingQueue}
+ * 
+ * @param <E>
+ *            The type of the queued elements
+ */
+class BlockingLogQueue<E> extends LogQueue<E> {
+
+	private final static Object WAKEUP = new Object();
+
+	private final BlockingQueue<Object> queue;
+
+	/**
+	 * Creates a new blocking log queue
+	 * 
+	 * @param capacity
+	 *            The capacity of the queue
+	 */
+	BlockingLogQueue(int capacity) {
+		queue = new ArrayBlockingQueue<>(capacity);
+	}
+
+	@Override
+	boolean offer(E e) {
+		return queue.offer(e);
+	}
+
+	@Override
+	boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+		return queue.offer(e, timeout, unit);
+	}
+
+	@Override
+	E evict() {
+		return cast(queue.poll());
+	}
+
+	@Override
+	int remainingCapacity() {
+		return queue.remainingCapacity();
+	}
+
+	@Override
+	E take() throws InterruptedException {
+		return cast(queue.take());
+	}
+
+	@Override
+	E poll(long timeout, TimeUnit unit) throws InterruptedException {
+		return cast(queue.poll(timeout, unit));
+	}
+
+	@Override
+	int drainTo(Collection<? super E> c, int max) {
+		int count = 0;
+		Object o;
+		while (count < max && (o = queue.poll()) != null) {
+			if (o != WAKEUP) {
+				c.add(cast(o));
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Adds a marker to the queue. If the queue is full the consumer is not
+	 * waiting anyway.
+	 */
+	@Override
+	void wakeup() {
+		queue.offer(WAKEUP);
+	}
+
+	@SuppressWarnings("unchecked")
+	private E cast(Object o) {
+		return o == WAKEUP ? null : (E) o;
+	}
+}
@@ -0,0 +1,78 @@
+package havis.util.core.common.log;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Commit latency and loss window achieved by the {@link SQLHandler}. The loss
+ * window of a commit is the time from the creation of the oldest committed
+ * record until the commit is written, i.e. the time in which the record would
+ * have been lost on power failure.
+ */
+public class CommitStatistics {
+
+	private long commits;
+	private long latency;
+	private long maxLatency;
+	private long lastLatency;
+	private long maxWindow;
+	private long lastWindow;
+
+	/**
+	 * Adds a commit
+	 * 
+	 * @param latency
+	 *            The duration of the commit in nanoseconds
+	 * @param window
+	 *            The loss window of the commit in milliseconds
+	 */
+	synchronized void add(long latency, long window) {
+		commits++;
+		this.latency += latency;
+		this.lastLatency = latency;
+		this.maxLatency = Math.max(maxLatency, latency);
+		this.lastWindow = window;
+		this.maxWindow = Math.max(maxWindow, window);
+	}
+
+	/**
+	 * @return The number of commits
+	 */
+	public synchronized long getCommits() {
+		return commits;
+	}
+
+	/**
+	 * @return The average commit latency in microseconds
+	 */
+	public synchronized long getAverageLatency() {
+		return commits > 0 ? TimeUnit.NANOSECONDS.toMicros(latency / commits) : 0;
+	}
+
+	/**
+	 * @return The maximum commit latency in microseconds
+	 */
+	public synchronized long getMaxLatency() {
+		return TimeUnit.NANOSECONDS.toMicros(maxLatency);
+	}
+
+	/**
+	 * @return The latency of the last commit in microseconds
+	 */
+	public synchronized long getLastLatency() {
+		return TimeUnit.NANOSECONDS.toMicros(lastLatency);
+	}
+
+	/**
+	 * @return The maximum loss window in milliseconds
+	 */
+	public synchronized long getMaxLossWindow() {
+		return maxWindow;
+	}
+
+	/**
+	 * @return The loss window of the last commit in milliseconds
+	 */
+	public synchronized long getLastLossWindow() {
+		return lastWindow;
+	}
+}
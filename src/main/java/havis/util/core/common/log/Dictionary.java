@@ -0,0 +1,123 @@
+package havis.util.core.common.log;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * In memory cache of the logger and source dictionaries. Rows of the record
+ * table reference logger names and source class and method names by id. New
+ * names are inserted within the transaction of the current batch. Must only
+ * be used by the worker thread of the {@link SQLHandler}.
+ */
+class Dictionary {
+
+	final static String SELECT_LOGGERS = "SELECT id, name FROM logger_dict";
+	final static String SELECT_SOURCES = "SELECT id, class, method FROM source_dict";
+	final static String INSERT_LOGGER = "INSERT INTO logger_dict (id, name) VALUES (?, ?)";
+	final static String INSERT_SOURCE = "INSERT INTO source_dict (id, class, method) VALUES (?, ?, ?)";
+
+	private final Map<String, Integer> loggers = new HashMap<>();
+	private final Map<String, Map<String, Integer>> sources = new HashMap<>();
+	private int loggerId;
+	private int sourceId;
+
+	/**
+	 * Loads the dictionaries, discarding the cached entries
+	 * 
+	 * @param connection
+	 *            The connection to load from
+	 * @throws SQLException
+	 */
+	void load(Connection connection) throws SQLException {
+		loggers.clear();
+		sources.clear();
+		loggerId = 0;
+		sourceId = 0;
+		try (Statement statement = connection.createStatement()) {
+			try (ResultSet resultSet = statement.executeQuery(SELECT_LOGGERS)) {
+				while (resultSet.next()) {
+					int id = resultSet.getInt(1);
+					loggers.put(resultSet.getString(2), Integer.valueOf(id));
+					loggerId = Math.max(loggerId, id);
+				}
+			}
+			try (ResultSet resultSet = statement.executeQuery(SELECT_SOURCES)) {
+				while (resultSet.next()) {
+					int id = resultSet.getInt(1);
+					put(resultSet.getString(2), resultSet.getString(3), Integer.valueOf(id));
+					sourceId = Math.max(sourceId, id);
+				}
+			}
+		}
+	}
+
+	private void put(String clazz, String method, Integer id) {
+		Map<String, Integer> methods = sources.get(clazz);
+		if (methods == null)
+			sources.put(clazz, methods = new HashMap<>());
+		methods.put(method, id);
+	}
+
+	/**
+	 * Returns the id of the logger name, inserts the name if unknown
+	 * 
+	 * @param connection
+	 *            The connection of the current transaction
+	 * @param name
+	 *            The logger name
+	 * @return The id or null if the name is null
+	 * @throws SQLException
+	 */
+	Integer getLogger(Connection connection, String name) throws SQLException {
+		if (name == null)
+			return null;
+		Integer id = loggers.get(name);
+		if (id == null) {
+			id = Integer.valueOf(loggerId + 1);
+			try (PreparedStatement statement = connection.prepareStatement(INSERT_LOGGER)) {
+				statement.setInt(1, id.intValue());
+				statement.setString(2, name);
+				statement.execute();
+			}
+			loggerId = id.intValue();
+			loggers.put(name, id);
+		}
+		return id;
+	}
+
+	/**
+	 * Returns the id of the source class and method, inserts them if unknown
+	 * 
+	 * @param connection
+	 *            The connection of the current transaction
+	 * @param clazz
+	 *            The source class name
+	 * @param method
+	 *            The source method name
+	 * @return The id or null if both names are null
+	 * @throws SQLException
+	 */
+	Integer getSource(Connection connection, String clazz, String method) throws SQLException {
+		if (clazz == null && method == null)
+			return null;
+		Map<String, Integer> methods = sources.get(clazz);
+		Integer id = methods != null ? methods.get(method) : null;
+		if (id == null) {
+			id = Integer.valueOf(sourceId + 1);
+			try (PreparedStatement statement = connection.prepareStatement(INSERT_SOURCE)) {
+				statement.setInt(1, id.intValue());
+				statement.setString(2, clazz);
+				statement.setString(3, method);
+				statement.execute();
+			}
+			sourceId = id.intValue();
+			put(clazz, method, id);
+		}
+		return id;
+	}
+}
@@ -0,0 +1,64 @@
+package havis.util.core.common.log;
+
+import havis.util.core.log.LogLevel;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the log records dropped by the {@link SQLHandler} per logger and per
+ * level
+ */
+class DropStatistics {
+
+	private final ConcurrentMap<String, AtomicLong> loggers = new ConcurrentHashMap<>();
+	private final ConcurrentMap<LogLevel, AtomicLong> levels = new ConcurrentHashMap<>();
+
+	/**
+	 * Counts a dropped record
+	 * 
+	 * @param logger
+	 *            The name of the logger, may be null
+	 * @param level
+	 *            The level value of the record
+	 */
+	void add(String logger, int level) {
+		increment(loggers, logger != null ? logger : "");
+		increment(levels, Util.valueOf(level));
+	}
+
+	private static <K> void increment(ConcurrentMap<K, AtomicLong> counters, K key) {
+		AtomicLong counter = counters.get(key);
+		if (counter == null) {
+			AtomicLong previous = counters.putIfAbsent(key, counter = new AtomicLong());
+			if (previous != null)
+				counter = previous;
+		}
+		counter.incrementAndGet();
+	}
+
+	/**
+	 * @return The number of dropped records per logger
+	 */
+	Map<String, Long> getLoggers() {
+		Map<String, Long> result = new LinkedHashMap<>();
+		for (Entry<String, AtomicLong> entry : loggers.entrySet())
+			result.put(entry.getKey(), Long.valueOf(entry.getValue().get()));
+		return result;
+	}
+
+	/**
+	 * @return The number of dropped records per level
+	 */
+	Map<LogLevel, Long> getLevels() {
+		Map<LogLevel, Long> result = new EnumMap<>(LogLevel.class);
+		for (Entry<LogLevel, AtomicLong> entry : levels.entrySet())
+			result.put(entry.getKey(), Long.valueOf(entry.getValue().get()));
+		return result;
+	}
+}
@@ -0,0 +1,47 @@
+package havis.util.core.common.log;
+
+/**
+ * Durability mode of the {@link SQLHandler}
+ */
+public enum Durability {
+
+	/**
+	 * Commits each record on its own, the database writes on each commit. This
+	 * is the default.
+	 */
+	RECORD,
+
+	/**
+	 * Commits the records of several batches together, a group is committed
+	 * after the configured number of records or once the oldest record
+	 * reached the configured group interval. The database writes on each
+	 * commit.
+	 */
+	GROUP,
+
+	/**
+	 * Commits the records of a batch together and lets the database write
+	 * committed changes delayed by the configured write delay, which matches
+	 * the default behavior of H2
+	 */
+	ASYNC;
+
+	/**
+	 * Returns the durability by name
+	 * 
+	 * @param value
+	 *            The name of the durability
+	 * @param defaultValue
+	 *            The durability to return if the name is unknown
+	 * @return The durability
+	 */
+	static Durability valueOf(String value, Durability defaultValue) {
+		if (value != null)
+			try {
+				return valueOf(value.trim().toUpperCase());
+			} catch (IllegalArgumentException e) {
+				// fall through
+			}
+		return defaultValue;
+	}
+}
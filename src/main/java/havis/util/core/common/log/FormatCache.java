@@ -0,0 +1,113 @@
+package havis.util.core.common.log;
+
+import java.text.MessageFormat;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded least recently used cache of compiled message formats by pattern
+ * and locale. {@link MessageFormat} is not thread safe, thus formatting
+ * synchronizes on the cached instance.
+ */
+class FormatCache {
+
+	private static class Key {
+		final String pattern;
+		final Locale locale;
+
+		Key(String pattern, Locale locale) {
+			this.pattern = pattern;
+			this.locale = locale;
+		}
+
+		@Override
+		public int hashCode() {
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + ((locale == null) ? 0 : locale.hashCode());
+			result = prime * result + pattern.hashCode();
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof Key))
+				return false;
+			Key other = (Key) obj;
+			return pattern.equals(other.pattern) && (locale == null ? other.locale == null : locale.equals(other.locale));
+		}
+	}
+
+	private final Map<Key, MessageFormat> formats;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Creates a new format cache
+	 * 
+	 * @param capacity
+	 *            The maximum number of cached formats
+	 */
+	FormatCache(final int capacity) {
+		formats = new LinkedHashMap<Key, MessageFormat>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, MessageFormat> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * Formats the object with the cached or a new compiled format
+	 * 
+	 * @param pattern
+	 *            The pattern
+	 * @param locale
+	 *            The locale
+	 * @param obj
+	 *            The object to format
+	 * @return The formatted string
+	 * @throws IllegalArgumentException
+	 *             If the pattern is invalid or the object can not be
+	 *             formatted
+	 */
+	String format(String pattern, Locale locale, Object obj) {
+		Key key = new Key(pattern, locale);
+		MessageFormat format;
+		synchronized (formats) {
+			format = formats.get(key);
+		}
+		if (format != null) {
+			hits.incrementAndGet();
+		} else {
+			misses.incrementAndGet();
+			format = new MessageFormat(pattern, locale);
+			synchronized (formats) {
+				formats.put(key, format);
+			}
+		}
+		synchronized (format) {
+			return format.format(obj);
+		}
+	}
+
+	/**
+	 * @return The number of cache hits
+	 */
+	long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return The number of cache misses
+	 */
+	long getMisses() {
+		return misses.get();
+	}
+}
@@ -0,0 +1,814 @@
+package havis.util.core.common.log;
+
+import havis.util.core.common.Environment;
+import havis.util.core.log.LogEntry;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Default storage of the {@link SQLHandler} in a H2 database. Entries are
+ * inserted by the worker thread of the handler within transactions committed
+ * according to the durability mode. Maintains the counters of the registered
+ * targets, the partitions, the search index and optionally a persistent tier,
+ * which keeps the entries at or above the tier level beyond the in memory
+ * database.
+ */
+class H2LogStore implements LogStore {
+
+	private final static Logger log = Logger.getLogger(H2LogStore.class.getName());
+
+	final static String URL = "jdbc:h2:%s;LAZY_QUERY_EXECUTION=1;ACCESS_MODE_DATA=r";
+	final static String WRITE_DELAY = "SET WRITE_DELAY %d";
+	final static String BOUNDS = "SELECT MIN(id), MAX(id) FROM record";
+	final static String INSERT = "INSERT INTO %s (id, millis, logger_id, source_id, level, message, params, thrown, thread, trace_id) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+	final static String SIZE = "SELECT COUNT(r.id) AS size FROM record r JOIN logger_dict l ON r.logger_id = l.id WHERE l.name >= ? AND l.name < ? AND r.level >= ?";
+	final static String COLUMNS = "SELECT r.id, r.millis, l.name AS logger, s.class, s.method, r.level, r.message, r.parameters, r.params, COALESCE(r.thrown, tr.thrown) AS thrown, r.thread FROM record r LEFT JOIN logger_dict l ON r.logger_id = l.id LEFT JOIN source_dict s ON r.source_id = s.id LEFT JOIN trace tr ON r.trace_id = tr.id";
+	final static String SELECT = COLUMNS + " WHERE l.name >= ? AND l.name < ? AND r.level >= ? AND r.id > ? ORDER BY r.id ASC LIMIT ? OFFSET ?";
+	final static String SELECT_CURSOR = COLUMNS + " WHERE l.name >= ? AND l.name < ? AND r.level >= ? ORDER BY r.id ASC";
+	final static String COUNT = "SELECT r.level, COUNT(r.id) FROM record r JOIN logger_dict l ON r.logger_id = l.id WHERE l.name >= ? AND l.name < ? AND r.id <= ? GROUP BY r.level";
+	final static String COUNT_CLEAR = "SELECT l.name, r.level, COUNT(r.id) FROM record r JOIN logger_dict l ON r.logger_id = l.id WHERE l.name >= ? AND l.name < ? GROUP BY l.name, r.level";
+	final static String COUNT_TRUNC = "SELECT l.name, r.level, COUNT(r.id) FROM record r JOIN logger_dict l ON r.logger_id = l.id WHERE r.id < ? GROUP BY l.name, r.level";
+	final static String CLEAR = "DELETE FROM %s WHERE logger_id IN (SELECT id FROM logger_dict WHERE name >= ? AND name < ?)";
+	final static String TRUNC = "DELETE FROM %s WHERE id < ?";
+
+	private final String url;
+	private final LogTier tier;
+	private final int maxEntries;
+	private final long high;
+	private final int chunk;
+	private final long age;
+	private final Durability durability;
+	private final int writeDelay;
+	private final int groupInterval;
+	private final int groupCount;
+	private final CommitStatistics statistics;
+	private final ClassLoader loader;
+
+	private boolean search = Environment.LOG_SEARCH.booleanValue();
+	private int fetchSize = Math.max(1, Environment.LOG_FETCH_SIZE.intValue());
+	private LevelCounters counters = new LevelCounters();
+	private Dictionary dictionary = new Dictionary();
+	private Traces traces = new Traces();
+	private Partitions partitions = new Partitions();
+	private Connection connection;
+	private Connection writer;
+	private PreparedStatement insert;
+	private PreparedStatement tokens;
+	private long id;
+	/**
+	 * The last committed id, guarded by the counters
+	 */
+	private long committed;
+	private volatile long start;
+	private long cutoff;
+	/**
+	 * Inserted events of the current transaction and the creation time of
+	 * the oldest one
+	 */
+	private List<LogEvent> uncommitted = new ArrayList<>();
+	private long oldest = Long.MAX_VALUE;
+
+	/**
+	 * Creates a new H2 store
+	 * 
+	 * @param url
+	 *            The database URL
+	 * @param tier
+	 *            The persistent tier or null
+	 * @param maxEntries
+	 *            The number of entries to keep
+	 * @param high
+	 *            The number of entries to start trimming at
+	 * @param chunk
+	 *            The maximum number of entries deleted at once
+	 * @param age
+	 *            The retention age in milliseconds, 0 to keep entries
+	 *            regardless of age
+	 * @param durability
+	 *            The durability mode
+	 * @param writeDelay
+	 *            The write delay of the database in async mode in
+	 *            milliseconds
+	 * @param groupInterval
+	 *            The maximum age of uncommitted records in group mode in
+	 *            milliseconds
+	 * @param groupCount
+	 *            The maximum number of uncommitted records in group mode
+	 * @param statistics
+	 *            The statistics to record the commits to
+	 * @param loader
+	 *            The context class loader of the thread of the persistent
+	 *            tier
+	 */
+	H2LogStore(String url, LogTier tier, int maxEntries, long high, int chunk, long age, Durability durability, int writeDelay, int groupInterval,
+			int groupCount, CommitStatistics statistics, ClassLoader loader) {
+		this.url = url;
+		this.tier = tier;
+		this.maxEntries = maxEntries;
+		this.high = high;
+		this.chunk = chunk;
+		this.age = age;
+		this.durability = durability;
+		this.writeDelay = writeDelay;
+		this.groupInterval = groupInterval;
+		this.groupCount = groupCount;
+		this.statistics = statistics;
+		this.loader = loader;
+	}
+
+	/**
+	 * Opens the persistent tier if configured and creates or migrates the
+	 * database schema. Ids continue after the greatest persistent id.
+	 */
+	@Override
+	public void open() throws IOException {
+		try {
+			long last = tier != null ? tier.open(loader) : 0;
+			Schema.migrate(getWriter());
+			dictionary.load(getWriter());
+			traces.load(getWriter());
+			partitions.load(getWriter());
+			try (Statement statement = getWriter().createStatement()) {
+				try (ResultSet resultSet = statement.executeQuery(BOUNDS)) {
+					if (resultSet.next()) {
+						id = Math.max(last, resultSet.getLong(2));
+						start = resultSet.wasNull() ? id + 1 : resultSet.getLong(1);
+					}
+				}
+			}
+			synchronized (counters) {
+				committed = id;
+			}
+		} catch (SQLException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Wakes up to commit a due group, continues pending trimming without
+	 * waiting.
+	 */
+	@Override
+	public long getTimeout() {
+		if (!uncommitted.isEmpty())
+			// trimming waits for the commit
+			return Math.max(0, oldest + groupInterval - System.currentTimeMillis());
+		return start < cutoff ? 0 : -1;
+	}
+
+	/**
+	 * Inserts the events, commits a due group if called with an empty list
+	 * and trims the oldest entries.
+	 */
+	@Override
+	public void append(List<LogEvent> events) throws IOException {
+		try {
+			if (!events.isEmpty())
+				insert(events);
+			else if (isDue())
+				commit(getWriter());
+			trim();
+		} catch (SQLException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Commits the current group
+	 */
+	@Override
+	public void flush() throws IOException {
+		try {
+			commit(getWriter());
+		} catch (SQLException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * @return True if the uncommitted events are to be committed, i.e. in
+	 *         group mode if the group is complete or the oldest event reached
+	 *         the group interval
+	 */
+	private boolean isDue() {
+		return !uncommitted.isEmpty()
+				&& (durability != Durability.GROUP || uncommitted.size() >= groupCount || System.currentTimeMillis() - oldest >= groupInterval);
+	}
+
+	/**
+	 * Inserts the events using the prepared insert statement of the writer
+	 * connection. Depending on the durability each event is committed on its
+	 * own, all events are committed together or the events are added to the
+	 * current group. Starts a new partition before, if the partition interval
+	 * elapsed.
+	 * 
+	 * @param events
+	 *            The events to insert
+	 * @throws SQLException
+	 *             If insertion fails
+	 */
+	private void insert(List<LogEvent> events) throws SQLException {
+		Connection writer = getWriter();
+		long now = System.currentTimeMillis();
+		if (partitions.isDue(now)) {
+			// the database commits on creation of the partition
+			commit(writer);
+			if (partitions.rollover(writer, id + 1, now) && insert != null) {
+				insert.close();
+				insert = null;
+			}
+		}
+		if (insert == null || insert.isClosed())
+			insert = writer.prepareStatement(String.format(INSERT, partitions.getTable()));
+		if (search && (tokens == null || tokens.isClosed()))
+			tokens = writer.prepareStatement(SearchIndex.INSERT);
+		if (durability == Durability.RECORD) {
+			for (int i = 0; i < events.size(); i++) {
+				insert(writer, events.subList(i, i + 1));
+				commit(writer);
+			}
+		} else {
+			insert(writer, events);
+			if (isDue())
+				commit(writer);
+		}
+	}
+
+	/**
+	 * Inserts the events and their search tokens within the current
+	 * transaction
+	 * 
+	 * @param writer
+	 *            The writer connection
+	 * @param events
+	 *            The events to insert
+	 * @throws SQLException
+	 *             If insertion fails
+	 */
+	private void insert(Connection writer, List<LogEvent> events) throws SQLException {
+		try {
+			for (LogEvent event : events) {
+				bind(insert, writer, dictionary, traces, ++id, event);
+				insert.addBatch();
+				if (search)
+					SearchIndex.add(tokens, id, event);
+				uncommitted.add(event);
+				oldest = Math.min(oldest, event.getMillis());
+			}
+			insert.executeBatch();
+			if (search)
+				tokens.executeBatch();
+		} catch (SQLException | RuntimeException e) {
+			// binding or tokenizing may fail too
+			rollback(writer);
+			throw e;
+		}
+	}
+
+	/**
+	 * Commits the uncommitted events. Updates the counters and the commit
+	 * statistics or spills the events to the persistent tier.
+	 * 
+	 * @param writer
+	 *            The writer connection
+	 * @throws SQLException
+	 *             If commit fails
+	 */
+	private void commit(Connection writer) throws SQLException {
+		if (uncommitted.isEmpty())
+			return;
+		long latency;
+		try {
+			traces.flush(writer);
+			partitions.update(writer, oldest);
+			synchronized (counters) {
+				long begin = System.nanoTime();
+				writer.commit();
+				latency = System.nanoTime() - begin;
+				committed = id;
+				if (counters.isActive())
+					for (LogEvent event : uncommitted)
+						counters.add(event.getLogger(), event.getLevel(), 1);
+			}
+		} catch (SQLException | RuntimeException e) {
+			rollback(writer);
+			throw e;
+		}
+		if (tier != null) {
+			// the persistent tier records its own commits
+			tier.spill(uncommitted, id - uncommitted.size() + 1);
+		} else {
+			// committed changes are written by the database with the write
+			// delay in async mode
+			statistics.add(latency, System.currentTimeMillis() - oldest + (durability == Durability.ASYNC && isPersistent(url) ? writeDelay : 0));
+		}
+		uncommitted.clear();
+		oldest = Long.MAX_VALUE;
+	}
+
+	/**
+	 * Discards the pending batches and rolls back the current transaction,
+	 * the ids of the uncommitted events are reused. Reloads the dictionary and
+	 * the stack traces, which may contain names and traces of the rolled back
+	 * transaction.
+	 * 
+	 * @param writer
+	 *            The writer connection
+	 * @throws SQLException
+	 *             If rollback fails
+	 */
+	private void rollback(Connection writer) throws SQLException {
+		id = committed;
+		uncommitted.clear();
+		oldest = Long.MAX_VALUE;
+		if (insert != null)
+			insert.clearBatch();
+		if (tokens != null)
+			tokens.clearBatch();
+		writer.rollback();
+		try {
+			dictionary.load(writer);
+			traces.load(writer);
+		} catch (SQLException f) {
+			log.log(Level.SEVERE, "Failed to reload log dictionary", f);
+		}
+	}
+
+	/**
+	 * Binds the event to the insert statement
+	 * 
+	 * @param insert
+	 *            The insert statement
+	 * @param writer
+	 *            The writer connection
+	 * @param dictionary
+	 *            The dictionary of the writer connection
+	 * @param traces
+	 *            The stack traces of the writer connection
+	 * @param id
+	 *            The id of the entry
+	 * @param event
+	 *            The event
+	 * @throws SQLException
+	 */
+	static void bind(PreparedStatement insert, Connection writer, Dictionary dictionary, Traces traces, long id, LogEvent event) throws SQLException {
+		Integer trace = traces.getTrace(writer, event.getThrown(), id);
+		insert.setLong(1, id);
+		insert.setTimestamp(2, new Timestamp(event.getMillis()));
+		insert.setObject(3, dictionary.getLogger(writer, event.getLogger()), Types.INTEGER);
+		insert.setObject(4, dictionary.getSource(writer, event.getSourceClass(), event.getSourceMethod()), Types.INTEGER);
+		insert.setInt(5, event.getLevel());
+		insert.setString(6, event.getMessage());
+		insert.setBytes(7, event.getParameters());
+		insert.setString(8, trace != null ? null : event.getThrown());
+		insert.setInt(9, event.getThread());
+		insert.setObject(10, trace, Types.INTEGER);
+	}
+
+	/**
+	 * Deletes at most one chunk of the oldest entries. Trimming starts if the
+	 * number of entries exceeds the high watermark and continues chunk wise on
+	 * subsequent calls until only the maximum number of entries remains. Thus
+	 * the steady state costs one delete per high - max records instead of one
+	 * delete per record. With partitions the oldest partition is dropped as a
+	 * whole, if all its entries are to be removed. Partitions older than the
+	 * retention age are dropped too, as is the oldest partition once the
+	 * maximum number of partitions is reached. Trimming waits for the commit
+	 * of the current group.
+	 * 
+	 * @throws SQLException
+	 *             If deletion fails
+	 */
+	private void trim() throws SQLException {
+		if (id - start + 1 > high)
+			cutoff = id - maxEntries + 1;
+		long now = System.currentTimeMillis();
+		cutoff = Math.max(cutoff, partitions.expired(age > 0 ? now - age : Long.MIN_VALUE, now));
+		if (start < cutoff && uncommitted.isEmpty()) {
+			long bound = Math.min(start + chunk, cutoff);
+			long next = partitions.next(start);
+			if (next <= cutoff)
+				bound = Math.max(bound, next);
+			Connection writer = getWriter();
+			synchronized (counters) {
+				try {
+					if (counters.isActive())
+						try (PreparedStatement statement = writer.prepareStatement(COUNT_TRUNC)) {
+							statement.setLong(1, bound);
+							try (ResultSet resultSet = statement.executeQuery()) {
+								counters.subtract(resultSet);
+							}
+						}
+					partitions.truncate(writer, bound);
+					SearchIndex.truncate(writer, bound);
+					traces.truncate(writer, bound);
+					writer.commit();
+				} catch (SQLException e) {
+					writer.rollback();
+					// counters are inconsistent now
+					counters.invalidate();
+					throw e;
+				}
+			}
+			start = bound;
+		}
+	}
+
+	/**
+	 * Commits the current group, stops the persistent tier and closes the
+	 * database connections
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			if (!uncommitted.isEmpty())
+				commit(getWriter());
+		} catch (SQLException e) {
+			log.log(Level.SEVERE, "Failed to commit log entries", e);
+		}
+
+		if (tier != null)
+			tier.close();
+
+		try {
+			if (insert != null) {
+				insert.close();
+				insert = null;
+			}
+			if (tokens != null) {
+				tokens.close();
+				tokens = null;
+			}
+			if (writer != null) {
+				writer.close();
+				writer = null;
+			}
+			if (connection != null) {
+				connection.close();
+				connection = null;
+			}
+		} catch (SQLException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Returns the existing or a new connection of the worker thread, if
+	 * connection does not exists or is closed. Disables auto commit of the new
+	 * created connection, records are committed batch wise.
+	 * 
+	 * @return The open connection
+	 * @throws SQLException
+	 *             If connection creation fails
+	 */
+	private Connection getWriter() throws SQLException {
+		if (writer == null || writer.isClosed()) {
+			writer = DriverManager.getConnection(url);
+			writer.setAutoCommit(false);
+			// without write delay the database writes on each commit
+			if (isPersistent(url))
+				try (Statement statement = writer.createStatement()) {
+					statement.execute(String.format(WRITE_DELAY, Integer.valueOf(durability == Durability.ASYNC ? writeDelay : 0)));
+				}
+			insert = null;
+			tokens = null;
+		}
+		return writer;
+	}
+
+	/**
+	 * @param url
+	 *            The database URL
+	 * @return True unless the URL denotes an in memory database
+	 */
+	static boolean isPersistent(String url) {
+		return !url.startsWith("jdbc:h2:mem:");
+	}
+
+	/**
+	 * Returns an existing or a new connection, if connection does not exists or
+	 * is closed. Sets the new created connection to auto commit.
+	 * 
+	 * @return The open connection
+	 * @throws SQLException
+	 *             If connection creation fails
+	 */
+	private Connection getConnection() throws SQLException {
+		if (connection == null || connection.isClosed()) {
+			connection = DriverManager.getConnection(url);
+			connection.setAutoCommit(true);
+		}
+		return connection;
+	}
+
+	@Override
+	public void register(String target) {
+		synchronized (counters) {
+			counters.register(target);
+		}
+	}
+
+	@Override
+	public void unregister(String target) {
+		synchronized (counters) {
+			counters.unregister(target);
+		}
+	}
+
+	/**
+	 * Answers from the counters of registered targets, which are loaded on
+	 * first use, queries the database otherwise. Entries of the persistent
+	 * tier, which are no longer kept in memory, are counted too.
+	 */
+	@Override
+	public int size(String logger, int level) throws IOException {
+		try {
+			int size = 0;
+			if (tier != null)
+				size = tier.size(logger, level, 0, start);
+			return size + size(getConnection(), logger, level);
+		} catch (SQLException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Returns the number of selected rows from the counters or the database.
+	 * An invalid counter is loaded without holding the lock of the counters,
+	 * thus the worker thread is not blocked meanwhile. The entries are counted
+	 * up to the last committed id, the counters add the entries committed
+	 * after.
+	 */
+	private int size(Connection connection, String name, int level) throws SQLException {
+		long[] pending;
+		long bound;
+		synchronized (counters) {
+			long size = counters.size(name, level);
+			if (size > -1)
+				return (int) size;
+			pending = counters.begin(name);
+			bound = committed;
+		}
+		if (pending != null) {
+			long[] levels;
+			try (PreparedStatement statement = connection.prepareStatement(COUNT)) {
+				setPrefix(statement, 1, name);
+				statement.setLong(3, bound);
+				try (ResultSet resultSet = statement.executeQuery()) {
+					levels = LevelCounters.levels(resultSet);
+				}
+			}
+			synchronized (counters) {
+				// entries removed meanwhile abort the load
+				if (counters.install(name, pending, levels))
+					return (int) counters.size(name, level);
+			}
+		}
+		try (PreparedStatement statement = connection.prepareStatement(SIZE)) {
+			setPrefix(statement, 1, name);
+			statement.setInt(3, level);
+			try (ResultSet resultSet = statement.executeQuery()) {
+				if (resultSet.next())
+					return resultSet.getInt("SIZE");
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * With partitions only the partitions overlapping the time range are
+	 * counted. Entries of the persistent tier, which are no longer kept in
+	 * memory, are counted too.
+	 */
+	@Override
+	public int size(String logger, int level, long from, long to) throws IOException {
+		try {
+			int size = 0;
+			if (tier != null)
+				size = tier.size(logger, level, from, to, 0, start);
+			return size + partitions.size(getConnection(), logger, level, from, to, 0, Long.MAX_VALUE);
+		} catch (SQLException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * With partitions only the partitions overlapping the time range are
+	 * read. Entries of the persistent tier, which are no longer kept in
+	 * memory, precede the entries in memory.
+	 */
+	@Override
+	public List<LogEntry> get(String logger, int level, long from, long to, long after, int limit, int offset, Locale locale) throws IOException {
+		boolean range = from != Long.MIN_VALUE || to != Long.MAX_VALUE;
+		try {
+			List<LogEntry> entries = new ArrayList<>();
+			long bound = start;
+			if (tier != null && after < bound - 1) {
+				// the persistent entries are only counted to skip them
+				int size = 0;
+				if (offset > 0)
+					size = range ? tier.size(logger, level, from, to, after, bound) : tier.size(logger, level, after, bound);
+				if (offset > 0 && offset >= size) {
+					offset -= size;
+				} else {
+					entries = range ? tier.get(logger, level, from, to, after, bound, limit, offset, locale) : tier.get(logger, level, after, bound, limit,
+							offset, locale);
+					limit -= entries.size();
+					offset = 0;
+					if (limit <= 0)
+						return entries;
+				}
+			}
+			if (range) {
+				entries.addAll(partitions.get(getConnection(), logger, level, from, to, after, Long.MAX_VALUE, limit, offset, locale));
+			} else {
+				try (PreparedStatement statement = getConnection().prepareStatement(SELECT)) {
+					setPrefix(statement, 1, logger);
+					statement.setInt(3, level);
+					statement.setLong(4, after);
+					statement.setInt(5, limit);
+					statement.setInt(6, offset);
+					entries.addAll(get(statement, locale));
+				}
+			}
+			return entries;
+		} catch (SQLException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * The entries are read from the database while iterating. Entries of the
+	 * persistent tier, which are no longer kept in memory, are returned first.
+	 */
+	@Override
+	public LogCursor cursor(String logger, int level, Locale locale) throws IOException {
+		try {
+			long bound = start;
+			PreparedStatement statement = getConnection().prepareStatement(SELECT_CURSOR);
+			try {
+				setPrefix(statement, 1, logger);
+				statement.setInt(3, level);
+			} catch (SQLException e) {
+				statement.close();
+				throw e;
+			}
+			LogCursor cursor = new LogCursor(statement, fetchSize, locale);
+			if (tier != null)
+				try {
+					cursor = new LogCursor(tier.cursor(logger, level, bound), fetchSize, locale, cursor);
+				} catch (SQLException e) {
+					cursor.close();
+					throw e;
+				}
+			return cursor;
+		} catch (SQLException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Uses the search index if enabled. Entries of the persistent tier, which
+	 * are no longer kept in memory, follow the entries in memory.
+	 */
+	@Override
+	public List<LogEntry> search(String logger, int level, String query, int limit, Locale locale) throws IOException {
+		try {
+			long bound = start;
+			List<LogEntry> entries = SearchIndex.search(getConnection(), search, logger, level, query, Long.MAX_VALUE, limit, locale);
+			if (tier != null && entries.size() < limit)
+				entries.addAll(tier.search(logger, level, query, bound, limit - entries.size(), locale));
+			return entries;
+		} catch (SQLException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Removes the entries of the persistent tier too and subtracts the
+	 * removed entries from the counters. Entries of the persistent tier are
+	 * only counted if they are no longer kept in memory.
+	 */
+	@Override
+	public int clear(String logger) throws IOException {
+		try {
+			int count = 0;
+			if (tier != null) {
+				// entries still kept in memory are counted once
+				count = tier.size(logger, Integer.MIN_VALUE, 0, start);
+				tier.clear(logger);
+			}
+			return count + clear(getConnection(), logger);
+		} catch (SQLException e) {
+			throw new IOException(e);
+		}
+	}
+
+	private int clear(Connection connection, String logger) throws SQLException {
+		synchronized (counters) {
+			if (counters.isActive())
+				try (PreparedStatement statement = connection.prepareStatement(COUNT_CLEAR)) {
+					setPrefix(statement, 1, logger);
+					try (ResultSet resultSet = statement.executeQuery()) {
+						counters.subtract(resultSet);
+					}
+				}
+			try {
+				SearchIndex.clear(connection, logger);
+				return partitions.clear(connection, logger);
+			} catch (SQLException e) {
+				counters.invalidate();
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * Opens a cursor over all entries of a database file. The file is opened
+	 * read only, thus files of previous versions are read as they are without
+	 * migration. Lazy execution streams the result instead of buffering it.
+	 * 
+	 * @param file
+	 *            The database file without extension
+	 * @param fetchSize
+	 *            The number of rows fetched at once
+	 * @return The cursor
+	 * @throws SQLException
+	 *             If the file could not be read
+	 */
+	static LogCursor export(String file, int fetchSize) throws SQLException {
+		Connection connection = DriverManager.getConnection(String.format(URL, file));
+		try {
+			return new LogCursor(connection, connection.prepareStatement(Schema.getSelectAll(Schema.getVersion(connection))), fetchSize, Locale.US);
+		} catch (SQLException | RuntimeException e) {
+			connection.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Executes the query and maps each row to a log entry
+	 * 
+	 * @param statement
+	 *            The prepared query
+	 * @param locale
+	 *            The locale to format the messages with
+	 * @return a list of log entries
+	 * @throws SQLException
+	 */
+	static List<LogEntry> get(PreparedStatement statement, Locale locale) throws SQLException {
+		List<LogEntry> entries = new ArrayList<>();
+		try (ResultSet resultSet = statement.executeQuery()) {
+			while (resultSet.next())
+				entries.add(entry(resultSet, locale));
+		}
+		return entries;
+	}
+
+	/**
+	 * Maps the current row to a log entry
+	 * 
+	 * @param resultSet
+	 *            The result set positioned on a row
+	 * @param locale
+	 *            The locale to format the message with
+	 * @return The log entry
+	 * @throws SQLException
+	 */
+	static LogEntry entry(ResultSet resultSet, Locale locale) throws SQLException {
+		return SQLHandler.entry(resultSet.getLong("id"), resultSet.getTimestamp("millis").getTime(), resultSet.getString("logger"),
+				resultSet.getString("class"), resultSet.getString("method"), resultSet.getInt("level"), resultSet.getString("message"),
+				resultSet.getString("parameters"), resultSet.getBytes("params"), resultSet.getString("thrown"), resultSet.getInt("thread"), locale);
+	}
+
+	/**
+	 * Sets the lower and upper bound of a logger name prefix match
+	 * 
+	 * @param statement
+	 *            The statement
+	 * @param index
+	 *            The index of the lower bound, the upper bound follows
+	 * @param prefix
+	 *            The logger name prefix
+	 * @throws SQLException
+	 */
+	static void setPrefix(PreparedStatement statement, int index, String prefix) throws SQLException {
+		if (prefix == null)
+			prefix = "";
+		statement.setString(index, prefix);
+		statement.setString(index + 1, Util.upperBound(prefix));
+	}
+}
@@ -0,0 +1,222 @@
+package havis.util.core.common.log;
+
+import havis.util.core.log.LogLevel;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Number of log entries per registered log target and level. A target counts
+ * all entries of loggers starting with the target name. The counters are
+ * maintained incrementally by the {@link H2LogStore}, callers must hold the
+ * lock of this instance.
+ * 
+ * A counter is loaded without holding the lock: {@link #begin(String)} starts
+ * collecting the entries added meanwhile, the caller counts the entries up to
+ * the last committed id and installs the result by
+ * {@link #install(String, long[], long[])}. Removing entries aborts the load,
+ * because it is unknown whether the count includes them.
+ */
+class LevelCounters {
+
+	private final static LogLevel[] LEVELS = LogLevel.values();
+
+	private static class Counter {
+		final String target;
+		final long[] levels = new long[LEVELS.length];
+		int references;
+		boolean valid;
+		long[] pending;
+
+		Counter(String target) {
+			this.target = target;
+		}
+	}
+
+	private final Map<String, Counter> counters = new HashMap<>();
+
+	/**
+	 * Valid counters matching a logger name
+	 */
+	private final Map<String, Counter[]> matches = new HashMap<>();
+
+	/**
+	 * Registers a target. The counter of a new target is invalid until
+	 * loaded.
+	 * 
+	 * @param target
+	 *            The target name
+	 */
+	void register(String target) {
+		Counter counter = counters.get(target);
+		if (counter == null)
+			counters.put(target, counter = new Counter(target));
+		counter.references++;
+	}
+
+	/**
+	 * Unregisters a target
+	 * 
+	 * @param target
+	 *            The target name
+	 */
+	void unregister(String target) {
+		Counter counter = counters.get(target);
+		if (counter != null && --counter.references <= 0) {
+			counters.remove(target);
+			matches.clear();
+		}
+	}
+
+	/**
+	 * Invalidates all counters and aborts pending loads, they are loaded
+	 * again on next use
+	 */
+	void invalidate() {
+		for (Counter counter : counters.values()) {
+			counter.valid = false;
+			counter.pending = null;
+		}
+		matches.clear();
+	}
+
+	/**
+	 * @return True if there is at least one valid or loading counter to
+	 *         maintain
+	 */
+	boolean isActive() {
+		for (Counter counter : counters.values())
+			if (counter.valid || counter.pending != null)
+				return true;
+		return false;
+	}
+
+	/**
+	 * Starts loading the counter of a target. Entries added until the counter
+	 * is installed are collected.
+	 * 
+	 * @param target
+	 *            The target name
+	 * @return The collected entries identifying the load or null if the
+	 *         target is not registered or already loaded
+	 */
+	long[] begin(String target) {
+		Counter counter = counters.get(target);
+		if (counter == null || counter.valid)
+			return null;
+		if (counter.pending == null) {
+			counter.pending = new long[LEVELS.length];
+			matches.clear();
+		}
+		return counter.pending;
+	}
+
+	/**
+	 * Installs the loaded counter of a target, if the load was not aborted
+	 * 
+	 * @param target
+	 *            The target name
+	 * @param pending
+	 *            The collected entries returned by {@link #begin(String)}
+	 * @param levels
+	 *            The number of entries per level up to the last committed id
+	 *            at the begin of the load
+	 * @return True if installed
+	 */
+	boolean install(String target, long[] pending, long[] levels) {
+		Counter counter = counters.get(target);
+		if (counter == null || counter.pending != pending)
+			return false;
+		for (int i = 0; i < levels.length; i++)
+			counter.levels[i] = levels[i] + pending[i];
+		counter.pending = null;
+		counter.valid = true;
+		return true;
+	}
+
+	/**
+	 * Reads rows of level and count
+	 * 
+	 * @param resultSet
+	 *            The rows of level and count
+	 * @return The number of entries per level
+	 * @throws SQLException
+	 */
+	static long[] levels(ResultSet resultSet) throws SQLException {
+		long[] levels = new long[LEVELS.length];
+		while (resultSet.next())
+			levels[Util.valueOf(resultSet.getInt(1)).ordinal()] += resultSet.getLong(2);
+		return levels;
+	}
+
+	/**
+	 * Adds to the counters of all targets matching the logger
+	 * 
+	 * @param logger
+	 *            The logger name
+	 * @param level
+	 *            The level value
+	 * @param count
+	 *            The number to add, negative to subtract
+	 */
+	void add(String logger, int level, long count) {
+		if (logger == null)
+			return;
+		Counter[] counters = matches.get(logger);
+		if (counters == null) {
+			List<Counter> list = new ArrayList<>();
+			for (Counter counter : this.counters.values())
+				if ((counter.valid || counter.pending != null) && logger.startsWith(counter.target))
+					list.add(counter);
+			matches.put(logger, counters = list.toArray(new Counter[list.size()]));
+		}
+		int index = Util.valueOf(level).ordinal();
+		for (Counter counter : counters) {
+			long[] levels = counter.valid ? counter.levels : counter.pending;
+			if (levels != null)
+				levels[index] = Math.max(0, levels[index] + count);
+		}
+	}
+
+	/**
+	 * Subtracts rows of logger, level and count from the counters. Aborts
+	 * pending loads.
+	 * 
+	 * @param resultSet
+	 *            The rows of logger, level and count
+	 * @throws SQLException
+	 */
+	void subtract(ResultSet resultSet) throws SQLException {
+		for (Counter counter : counters.values())
+			if (counter.pending != null) {
+				counter.pending = null;
+				matches.clear();
+			}
+		while (resultSet.next())
+			add(resultSet.getString(1), resultSet.getInt(2), -resultSet.getLong(3));
+	}
+
+	/**
+	 * Returns the number of entries of a target with at least the given level
+	 * 
+	 * @param target
+	 *            The target name
+	 * @param level
+	 *            The minimum level value
+	 * @return The number of entries or -1 if the target has no valid counter
+	 */
+	long size(String target, int level) {
+		Counter counter = counters.get(target);
+		if (counter == null || !counter.valid)
+			return -1;
+		long size = 0;
+		for (int i = 0; i < LEVELS.length; i++)
+			if (Util.toInt(LEVELS[i]) >= level)
+				size += counter.levels[i];
+		return size;
+	}
+}
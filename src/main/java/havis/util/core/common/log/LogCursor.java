@@ -0,0 +1,187 @@
+package havis.util.core.common.log;
+
+import havis.util.core.log.LogEntry;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Iterator over log entries, which reads the entries row by row from an open
+ * result set or from a log store instead of loading all entries into memory.
+ * The cursor is closed automatically after the last entry, otherwise it has to
+ * be closed by the caller.
+ */
+public class LogCursor implements Iterator<LogEntry>, Closeable {
+
+	private final static Logger log = Logger.getLogger(LogCursor.class.getName());
+
+	private final PreparedStatement statement;
+	private final ResultSet resultSet;
+	private final Iterator<LogEntry> entries;
+	private final Locale locale;
+	private LogCursor tail;
+	private Connection connection;
+	private LogEntry next;
+	private boolean closed;
+
+	/**
+	 * Executes the query and creates a new cursor. The cursor takes ownership
+	 * of the statement.
+	 * 
+	 * @param statement
+	 *            The prepared query
+	 * @param fetchSize
+	 *            The number of rows to fetch at once
+	 * @param locale
+	 *            The locale to format the messages with
+	 * @throws SQLException
+	 *             If the query fails
+	 */
+	LogCursor(PreparedStatement statement, int fetchSize, Locale locale) throws SQLException {
+		this.statement = statement;
+		this.entries = null;
+		this.locale = locale;
+		try {
+			statement.setFetchSize(fetchSize);
+			this.resultSet = statement.executeQuery();
+		} catch (SQLException e) {
+			statement.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Executes the query and creates a new cursor, which continues with the
+	 * entries of the tail cursor after the last row. The cursor takes
+	 * ownership of the statement and the tail cursor.
+	 * 
+	 * @param statement
+	 *            The prepared query
+	 * @param fetchSize
+	 *            The number of rows to fetch at once
+	 * @param locale
+	 *            The locale to format the messages with
+	 * @param tail
+	 *            The cursor to continue with
+	 * @throws SQLException
+	 *             If the query fails
+	 */
+	LogCursor(PreparedStatement statement, int fetchSize, Locale locale, LogCursor tail) throws SQLException {
+		this(statement, fetchSize, locale);
+		this.tail = tail;
+	}
+
+	/**
+	 * Executes the query and creates a new cursor on a connection of its own.
+	 * The cursor takes ownership of the statement and the connection, the
+	 * caller closes the connection if the query fails.
+	 * 
+	 * @param connection
+	 *            The connection of the statement
+	 * @param statement
+	 *            The prepared query
+	 * @param fetchSize
+	 *            The number of rows to fetch at once
+	 * @param locale
+	 *            The locale to format the messages with
+	 * @throws SQLException
+	 *             If the query fails
+	 */
+	LogCursor(Connection connection, PreparedStatement statement, int fetchSize, Locale locale) throws SQLException {
+		this(statement, fetchSize, locale);
+		this.connection = connection;
+	}
+
+	/**
+	 * Creates a new cursor over the entries of a log store
+	 * 
+	 * @param entries
+	 *            The entries, read while iterating
+	 */
+	LogCursor(Iterator<LogEntry> entries) {
+		this.statement = null;
+		this.resultSet = null;
+		this.entries = entries;
+		this.locale = null;
+	}
+
+	/**
+	 * @throws IllegalStateException
+	 *             If reading the next row fails
+	 */
+	@Override
+	public boolean hasNext() {
+		if (next == null && !closed) {
+			try {
+				if (entries != null)
+					next = entries.hasNext() ? entries.next() : null;
+				else if (resultSet.next())
+					next = H2LogStore.entry(resultSet, locale);
+				if (next == null)
+					close(false);
+			} catch (SQLException e) {
+				close(true);
+				throw new IllegalStateException("Failed to read log entry", e);
+			}
+		}
+		if (next == null && tail != null)
+			return tail.hasNext();
+		return next != null;
+	}
+
+	@Override
+	public LogEntry next() {
+		if (!hasNext())
+			throw new NoSuchElementException();
+		if (next == null)
+			return tail.next();
+		LogEntry entry = next;
+		next = null;
+		return entry;
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Closes the result set, the statement, an owned connection and the tail
+	 * cursor
+	 */
+	@Override
+	public void close() {
+		close(true);
+	}
+
+	/**
+	 * Closes the result set, the statement and an owned connection
+	 * 
+	 * @param all
+	 *            True to close the tail cursor too
+	 */
+	private void close(boolean all) {
+		if (all && tail != null)
+			tail.close();
+		if (!closed) {
+			closed = true;
+			if (statement != null)
+				try {
+					resultSet.close();
+					statement.close();
+					if (connection != null)
+						connection.close();
+				} catch (SQLException e) {
+					log.log(Level.FINE, "Failed to close log cursor", e);
+				}
+		}
+	}
+}
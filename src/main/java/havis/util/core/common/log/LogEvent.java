@@ -0,0 +1,134 @@
+package havis.util.core.common.log;
+
+import java.util.Locale;
+import java.util.logging.LogRecord;
+
+/**
+ * Snapshot of the fields of a {@link LogRecord} persisted by the
+ * {@link SQLHandler}. The snapshot is taken on the publishing thread, so
+ * neither the record nor its parameters are retained by the log queue. A
+ * deferred stack trace is rendered once by the consuming thread.
+ */
+class LogEvent {
+
+	private final long millis;
+	private final String logger;
+	private final String sourceClass;
+	private final String sourceMethod;
+	private final int level;
+	private final String message;
+	private final byte[] parameters;
+	private String thrown;
+	private Throwable throwable;
+	private final int thread;
+
+	/**
+	 * Creates a snapshot of the log record. Serializes the parameters or
+	 * formats the message if the parameters are not serializable.
+	 * 
+	 * @param record
+	 *            The log record
+	 * @param deferThrown
+	 *            True to keep the throwable and render its stack trace on
+	 *            the worker thread, false to render it immediately
+	 */
+	LogEvent(LogRecord record, boolean deferThrown) {
+		this.millis = record.getMillis();
+		this.logger = record.getLoggerName();
+		this.sourceClass = record.getSourceClassName();
+		this.sourceMethod = record.getSourceMethodName();
+		this.level = Util.toInt(record.getLevel());
+		Object[] parameters = record.getParameters();
+		byte[] encoded = Util.isSerializable(parameters) ? ParameterCodec.encode(parameters) : null;
+		if (encoded != null) {
+			this.message = record.getMessage();
+			this.parameters = encoded;
+		} else {
+			this.message = Util.format(record.getMessage(), Locale.getDefault(), parameters);
+			this.parameters = null;
+		}
+		if (deferThrown) {
+			this.thrown = null;
+			this.throwable = record.getThrown();
+		} else {
+			this.thrown = Util.toString(record.getThrown());
+			this.throwable = null;
+		}
+		this.thread = record.getThreadID();
+	}
+
+	/**
+	 * Creates a copy of the event with the formatted message followed by the
+	 * suffix. The parameters are rendered into the message, since the suffix
+	 * is not part of the message pattern.
+	 * 
+	 * @param event
+	 *            The event
+	 * @param suffix
+	 *            The text to append to the message
+	 */
+	LogEvent(LogEvent event, String suffix) {
+		this.millis = event.millis;
+		this.logger = event.logger;
+		this.sourceClass = event.sourceClass;
+		this.sourceMethod = event.sourceMethod;
+		this.level = event.level;
+		Object[] parameters = event.parameters != null ? ParameterCodec.decode(event.parameters) : null;
+		this.message = (parameters != null ? Util.format(event.message, Locale.getDefault(), parameters) : event.message) + suffix;
+		this.parameters = null;
+		this.thrown = event.getThrown();
+		this.throwable = null;
+		this.thread = event.thread;
+	}
+
+	long getMillis() {
+		return millis;
+	}
+
+	String getLogger() {
+		return logger;
+	}
+
+	String getSourceClass() {
+		return sourceClass;
+	}
+
+	String getSourceMethod() {
+		return sourceMethod;
+	}
+
+	int getLevel() {
+		return level;
+	}
+
+	/**
+	 * @return The message pattern if the parameters are serialized, the
+	 *         formatted message otherwise
+	 */
+	String getMessage() {
+		return message;
+	}
+
+	/**
+	 * @return The parameters encoded by {@link ParameterCodec} or null
+	 */
+	byte[] getParameters() {
+		return parameters;
+	}
+
+	/**
+	 * @return The stack trace of the thrown exception or null, rendered once
+	 *         on demand if deferred
+	 */
+	String getThrown() {
+		if (throwable != null) {
+			thrown = Util.toString(throwable);
+			throwable = null;
+		}
+		return thrown;
+	}
+
+	int getThread() {
+		return thread;
+	}
+}
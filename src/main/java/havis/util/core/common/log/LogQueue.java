@@ -0,0 +1,113 @@
+package havis.util.core.common.log;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded queue between the threads publishing log records and the single
+ * worker thread of the {@link SQLHandler}
+ * 
+ * @param <E>
+ *            The type of the queued elements
+ */
+abstract class LogQueue<E> {
+
+	/**
+	 * Creates a new log queue of the given type
+	 * 
+	 * @param type
+	 *            The queue type, either "ring" or "blocking"
+	 * @param capacity
+	 *            The capacity of the queue
+	 * @param strategy
+	 *            The wait strategy of the ring queue
+	 * @return The log queue
+	 */
+	static <E> LogQueue<E> create(String type, int capacity, WaitStrategy strategy) {
+		if ("ring".equalsIgnoreCase(type))
+			return new RingLogQueue<>(capacity, strategy);
+		return new BlockingLogQueue<>(capacity);
+	}
+
+	/**
+	 * Adds the element if the queue is not full. May be called by any thread.
+	 * 
+	 * @param e
+	 *            The element
+	 * @return True if the element was added, false otherwise
+	 */
+	abstract boolean offer(E e);
+
+	/**
+	 * Adds the element, waiting for free space if the queue is full. May be
+	 * called by any thread.
+	 * 
+	 * @param e
+	 *            The element
+	 * @param timeout
+	 *            The maximum time to wait
+	 * @param unit
+	 *            The unit of the timeout
+	 * @return True if the element was added, false otherwise
+	 * @throws InterruptedException
+	 *             If interrupted while waiting
+	 */
+	abstract boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException;
+
+	/**
+	 * Removes the oldest element to make room for a new one. May be called by
+	 * any thread.
+	 * 
+	 * @return The removed element or null if the queue is empty or does not
+	 *         support eviction by producers
+	 */
+	abstract E evict();
+
+	/**
+	 * @return The approximate number of free slots
+	 */
+	abstract int remainingCapacity();
+
+	/**
+	 * Waits for the next element. May only be called by the consumer thread.
+	 * 
+	 * @return The element or null if the consumer was woken by
+	 *         {@link #wakeup()}
+	 * @throws InterruptedException
+	 *             If interrupted while waiting
+	 */
+	abstract E take() throws InterruptedException;
+
+	/**
+	 * Waits for the next element up to the timeout. May only be called by the
+	 * consumer thread.
+	 * 
+	 * @param timeout
+	 *            The maximum time to wait
+	 * @param unit
+	 *            The unit of the timeout
+	 * @return The element or null if the timeout elapsed or the consumer was
+	 *         woken by {@link #wakeup()}
+	 * @throws InterruptedException
+	 *             If interrupted while waiting
+	 */
+	abstract E poll(long timeout, TimeUnit unit) throws InterruptedException;
+
+	/**
+	 * Moves available elements to the collection without waiting. May only be
+	 * called by the consumer thread.
+	 * 
+	 * @param c
+	 *            The collection to add to
+	 * @param max
+	 *            The maximum number of elements to move
+	 * @return The number of moved elements
+	 */
+	abstract int drainTo(Collection<? super E> c, int max);
+
+	/**
+	 * Wakes up the consumer thread waiting in {@link #take()} or
+	 * {@link #poll(long, TimeUnit)}
+	 */
+	abstract void wakeup();
+}
@@ -0,0 +1,168 @@
+package havis.util.core.common.log;
+
+import havis.util.core.log.LogEntry;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Storage of the {@link SQLHandler}. The {@link H2LogStore} is the default,
+ * the {@link SegmentLogStore} may be configured instead. The worker thread of
+ * the handler opens the store, appends the events batch wise and closes the
+ * store, queries are called by any thread. The store assigns ascending ids and
+ * applies the retention on its own.
+ */
+interface LogStore extends Closeable {
+
+	/**
+	 * Opens the store. Called by the worker thread before the first append.
+	 * 
+	 * @throws IOException
+	 *             If the store could not be opened
+	 */
+	void open() throws IOException;
+
+	/**
+	 * Returns the time the worker thread may wait for the next events. If the
+	 * time elapses the worker thread appends an empty list to let the store
+	 * write pending changes or continue the retention.
+	 * 
+	 * @return The time in milliseconds or -1 to wait for the next events
+	 */
+	long getTimeout();
+
+	/**
+	 * Appends the events with the next ids, called by the worker thread only
+	 * 
+	 * @param events
+	 *            The events, empty if the timeout elapsed
+	 * @throws IOException
+	 *             If appending fails
+	 */
+	void append(List<LogEvent> events) throws IOException;
+
+	/**
+	 * Commits or writes the appended events regardless of the durability
+	 * mode, called by the worker thread only on flush of the handler
+	 * 
+	 * @throws IOException
+	 *             If writing fails
+	 */
+	void flush() throws IOException;
+
+	/**
+	 * Registers a target, which is counted frequently. The store may maintain
+	 * counters for it.
+	 * 
+	 * @param target
+	 *            The target name
+	 */
+	void register(String target);
+
+	/**
+	 * Unregisters a target
+	 * 
+	 * @param target
+	 *            The target name
+	 */
+	void unregister(String target);
+
+	/**
+	 * Returns the number of entries of the logger name prefix with at least
+	 * the given level
+	 * 
+	 * @param logger
+	 *            The logger name prefix
+	 * @param level
+	 *            The minimum level
+	 * @return The number of entries
+	 * @throws IOException
+	 */
+	int size(String logger, int level) throws IOException;
+
+	/**
+	 * Returns the number of entries created within the time range
+	 * 
+	 * @param logger
+	 *            The logger name prefix
+	 * @param level
+	 *            The minimum level
+	 * @param from
+	 *            The inclusive start of the time range in milliseconds
+	 * @param to
+	 *            The exclusive end of the time range in milliseconds
+	 * @return The number of entries
+	 * @throws IOException
+	 */
+	int size(String logger, int level, long from, long to) throws IOException;
+
+	/**
+	 * Selects entries created within the time range with an id greater than
+	 * the given id, in ascending order
+	 * 
+	 * @param logger
+	 *            The logger name prefix
+	 * @param level
+	 *            The minimum level
+	 * @param from
+	 *            The inclusive start of the time range in milliseconds
+	 * @param to
+	 *            The exclusive end of the time range in milliseconds
+	 * @param after
+	 *            The exclusive lower bound of the ids
+	 * @param limit
+	 *            The maximum number of entries
+	 * @param offset
+	 *            The number of entries to skip
+	 * @param locale
+	 *            The locale to format the messages with
+	 * @return a list of log entries
+	 * @throws IOException
+	 */
+	List<LogEntry> get(String logger, int level, long from, long to, long after, int limit, int offset, Locale locale) throws IOException;
+
+	/**
+	 * Opens a cursor over the selected entries in ascending order
+	 * 
+	 * @param logger
+	 *            The logger name prefix
+	 * @param level
+	 *            The minimum level
+	 * @param locale
+	 *            The locale to format the messages with
+	 * @return The cursor
+	 * @throws IOException
+	 */
+	LogCursor cursor(String logger, int level, Locale locale) throws IOException;
+
+	/**
+	 * Searches the entries containing all words of the query, the most recent
+	 * first
+	 * 
+	 * @param logger
+	 *            The logger name prefix
+	 * @param level
+	 *            The minimum level
+	 * @param query
+	 *            The words to search for
+	 * @param limit
+	 *            The maximum number of entries
+	 * @param locale
+	 *            The locale to format the messages with
+	 * @return a list of log entries
+	 * @throws IOException
+	 */
+	List<LogEntry> search(String logger, int level, String query, int limit, Locale locale) throws IOException;
+
+	/**
+	 * Removes the entries of the logger name prefix
+	 * 
+	 * @param logger
+	 *            The logger name prefix
+	 * @return The number of removed entries
+	 * @throws IOException
+	 */
+	int clear(String logger) throws IOException;
+}
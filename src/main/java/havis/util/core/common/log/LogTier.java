@@ -0,0 +1,650 @@
+package havis.util.core.common.log;
+
+import havis.util.core.common.Environment;
+import havis.util.core.log.LogEntry;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Persistent tier of the {@link H2LogStore}. The store keeps all entries in
+ * memory and spills the entries at or above the tier level to the persistent
+ * database. Spilled entries are inserted by a background thread, thus the
+ * latency of the persistent database does not delay the in memory store.
+ * Entries keep the ids assigned by the store, so both tiers can be merged by
+ * id. The number of persistent entries is limited to the maximum number of
+ * entries.
+ */
+class LogTier implements Runnable {
+
+	private final static Logger log = Logger.getLogger(LogTier.class.getName());
+
+	final static String ROWS = "SELECT COUNT(id) FROM record";
+	final static String MAX = "SELECT MAX(id) FROM record";
+	final static String BOUND = "SELECT id FROM record ORDER BY id ASC LIMIT 1 OFFSET ?";
+	final static String SIZE = H2LogStore.SIZE + " AND r.id > ? AND r.id < ?";
+	final static String SELECT = H2LogStore.COLUMNS + " WHERE l.name >= ? AND l.name < ? AND r.level >= ? AND r.id > ? AND r.id < ? ORDER BY r.id ASC LIMIT ? OFFSET ?";
+	final static String SELECT_CURSOR = H2LogStore.COLUMNS + " WHERE l.name >= ? AND l.name < ? AND r.level >= ? AND r.id < ? ORDER BY r.id ASC";
+
+	/**
+	 * Spilled events with the ids assigned by the store
+	 */
+	private static class Spill {
+		private final long[] ids;
+		private final List<LogEvent> events;
+
+		private Spill(long[] ids, List<LogEvent> events) {
+			this.ids = ids;
+			this.events = events;
+		}
+	}
+
+	private final static Spill STOP = new Spill(new long[0], new ArrayList<LogEvent>());
+
+	private final String url;
+	private final int level;
+	private final int maxEntries;
+	private final long high;
+	private final int chunk;
+	private final CommitStatistics statistics;
+	private final DropStatistics drops;
+	private final BlockingQueue<Spill> queue = new LinkedBlockingQueue<>(Math.max(1, Environment.LOG_QUEUE_CAPACITY.intValue()));
+	private final Dictionary dictionary = new Dictionary();
+	private final Traces traces = new Traces();
+	private final Partitions partitions = new Partitions();
+	private long age = Math.max(0, Environment.LOG_RETENTION_AGE.intValue()) * 60000L;
+	private boolean search = Environment.LOG_SEARCH.booleanValue();
+	private Durability durability = Durability.valueOf(Environment.LOG_DURABILITY, Durability.RECORD);
+	private int writeDelay = Math.max(0, Environment.LOG_WRITE_DELAY.intValue());
+	private int groupInterval = Math.max(0, Environment.LOG_GROUP_INTERVAL.intValue());
+	private int groupCount = Math.max(1, Environment.LOG_GROUP_COUNT.intValue());
+	private Connection connection;
+	private Connection writer;
+	private PreparedStatement insert;
+	private PreparedStatement tokens;
+	private long rows;
+	/**
+	 * Inserted events of the current transaction and the creation time of
+	 * the oldest one
+	 */
+	private List<LogEvent> uncommitted = new ArrayList<>();
+	private long oldest = Long.MAX_VALUE;
+	private volatile boolean recount;
+	private Thread thread;
+
+	/**
+	 * Creates a new persistent tier
+	 * 
+	 * @param url
+	 *            The URL of the persistent database
+	 * @param level
+	 *            The minimum level of spilled entries
+	 * @param maxEntries
+	 *            The number of entries to keep
+	 * @param high
+	 *            The number of entries to start trimming at
+	 * @param chunk
+	 *            The maximum number of entries deleted at once
+	 * @param statistics
+	 *            The statistics to record the commits to
+	 * @param drops
+	 *            The statistics to count entries to, which could not be
+	 *            spilled
+	 */
+	LogTier(String url, int level, int maxEntries, long high, int chunk, CommitStatistics statistics, DropStatistics drops) {
+		this.url = url;
+		this.level = level;
+		this.maxEntries = maxEntries;
+		this.high = high;
+		this.chunk = chunk;
+		this.statistics = statistics;
+		this.drops = drops;
+	}
+
+	/**
+	 * Migrates the persistent database and starts the background thread. Must
+	 * be called by the worker thread of the store before spilling.
+	 * 
+	 * @param loader
+	 *            The context class loader of the background thread
+	 * @return The greatest persistent id
+	 * @throws SQLException
+	 *             If the persistent database could not be opened
+	 */
+	long open(ClassLoader loader) throws SQLException {
+		long id = 0;
+		Schema.migrate(getWriter());
+		dictionary.load(getWriter());
+		traces.load(getWriter());
+		partitions.load(getWriter());
+		count();
+		try (Statement statement = getWriter().createStatement()) {
+			try (ResultSet resultSet = statement.executeQuery(MAX)) {
+				if (resultSet.next())
+					id = resultSet.getLong(1);
+			}
+		}
+		thread = new Thread(this);
+		thread.setContextClassLoader(loader);
+		thread.start();
+		return id;
+	}
+
+	/**
+	 * Hands the committed events over to the background thread. Only events
+	 * at or above the tier level are spilled.
+	 * 
+	 * @param events
+	 *            The committed events
+	 * @param first
+	 *            The id of the first event, the following events have
+	 *            consecutive ids
+	 */
+	void spill(List<LogEvent> events, long first) {
+		List<LogEvent> spilled = new ArrayList<>();
+		long[] ids = new long[events.size()];
+		for (int i = 0; i < events.size(); i++) {
+			LogEvent event = events.get(i);
+			if (event.getLevel() >= level) {
+				ids[spilled.size()] = first + i;
+				spilled.add(event);
+			}
+		}
+		if (spilled.size() > 0 && !queue.offer(new Spill(ids, spilled)))
+			for (LogEvent event : spilled)
+				drops.add(event.getLogger(), event.getLevel());
+	}
+
+	/**
+	 * Stops the background thread after all pending events are inserted
+	 */
+	void close() {
+		if (thread != null) {
+			try {
+				queue.put(STOP);
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			thread = null;
+		}
+	}
+
+	/**
+	 * Inserts spilled events batch wise until stopped. Wakes up to commit a
+	 * due group, commits pending events before stopping.
+	 */
+	@Override
+	public void run() {
+		List<Spill> spills = new ArrayList<>();
+		boolean running = true;
+		while (running) {
+			try {
+				Spill spill = !uncommitted.isEmpty() ? queue.poll(Math.max(0, oldest + groupInterval - System.currentTimeMillis()), TimeUnit.MILLISECONDS)
+						: queue.take();
+				if (spill != null) {
+					spills.add(spill);
+					queue.drainTo(spills);
+					running = !spills.remove(STOP);
+				}
+				if (spills.size() > 0)
+					insert(spills);
+				if (!uncommitted.isEmpty() && (!running || isDue()))
+					commit(getWriter());
+				// trimming waits for the commit
+				if (uncommitted.isEmpty())
+					trim();
+			} catch (InterruptedException e) {
+				running = false;
+			} catch (Exception e) {
+				// failed events were counted as dropped
+				log.log(Level.SEVERE, "Failed to insert persistent log entries", e);
+			} finally {
+				spills.clear();
+			}
+		}
+
+		try {
+			if (insert != null) {
+				insert.close();
+				insert = null;
+			}
+			if (tokens != null) {
+				tokens.close();
+				tokens = null;
+			}
+			if (writer != null) {
+				writer.close();
+				writer = null;
+			}
+			if (connection != null) {
+				connection.close();
+				connection = null;
+			}
+		} catch (SQLException e) {
+			log.log(Level.SEVERE, "Failed to close persistent database connection", e);
+		}
+	}
+
+	/**
+	 * Inserts the spilled events. Depending on the durability each event is
+	 * committed on its own, all events are committed together or the events
+	 * are added to the current group. If insertion fails, the events not
+	 * inserted and the rolled back events are counted as dropped.
+	 * 
+	 * @param spills
+	 *            The spilled events
+	 * @throws SQLException
+	 *             If insertion fails
+	 */
+	private void insert(List<Spill> spills) throws SQLException {
+		// events of the current transaction or committed
+		int inserted = 0;
+		try {
+			Connection writer = getWriter();
+			long now = System.currentTimeMillis();
+			if (partitions.isDue(now)) {
+				// the database commits on creation of the partition
+				commit(writer);
+				if (partitions.rollover(writer, spills.get(0).ids[0], now) && insert != null) {
+					insert.close();
+					insert = null;
+				}
+			}
+			if (insert == null || insert.isClosed())
+				insert = writer.prepareStatement(String.format(H2LogStore.INSERT, partitions.getTable()));
+			if (search && (tokens == null || tokens.isClosed()))
+				tokens = writer.prepareStatement(SearchIndex.INSERT);
+			try {
+				for (Spill spill : spills) {
+					for (int i = 0; i < spill.events.size(); i++) {
+						LogEvent event = spill.events.get(i);
+						H2LogStore.bind(insert, writer, dictionary, traces, spill.ids[i], event);
+						if (search)
+							SearchIndex.add(tokens, spill.ids[i], event);
+						oldest = Math.min(oldest, event.getMillis());
+						uncommitted.add(event);
+						inserted++;
+						if (durability == Durability.RECORD) {
+							insert.executeUpdate();
+							if (search)
+								tokens.executeBatch();
+							commit(writer);
+						} else {
+							insert.addBatch();
+						}
+					}
+				}
+				if (durability != Durability.RECORD) {
+					insert.executeBatch();
+					if (search)
+						tokens.executeBatch();
+					if (isDue())
+						commit(writer);
+				}
+			} catch (SQLException | RuntimeException e) {
+				rollback(writer);
+				throw e;
+			}
+		} catch (SQLException | RuntimeException e) {
+			// the rolled back events are counted by the rollback
+			for (Spill spill : spills)
+				for (LogEvent event : spill.events)
+					if (inserted-- <= 0)
+						drops.add(event.getLogger(), event.getLevel());
+			throw e;
+		}
+	}
+
+	/**
+	 * @return True if the uncommitted events are to be committed, i.e. in
+	 *         group mode if the group is complete or the oldest event reached
+	 *         the group interval
+	 */
+	private boolean isDue() {
+		return !uncommitted.isEmpty() && (durability != Durability.GROUP || uncommitted.size() >= groupCount || System.currentTimeMillis() - oldest >= groupInterval);
+	}
+
+	/**
+	 * Updates the minimum record time of the partition, commits the
+	 * transaction and records the commit statistics
+	 * 
+	 * @param writer
+	 *            The writer connection
+	 * @throws SQLException
+	 *             If commit fails
+	 */
+	private void commit(Connection writer) throws SQLException {
+		if (uncommitted.isEmpty())
+			return;
+		long latency;
+		try {
+			traces.flush(writer);
+			partitions.update(writer, oldest);
+			long begin = System.nanoTime();
+			writer.commit();
+			latency = System.nanoTime() - begin;
+		} catch (SQLException | RuntimeException e) {
+			rollback(writer);
+			throw e;
+		}
+		// committed changes are written by the database with the write delay
+		// in async mode
+		statistics.add(latency, System.currentTimeMillis() - oldest + (durability == Durability.ASYNC && H2LogStore.isPersistent(url) ? writeDelay : 0));
+		rows += uncommitted.size();
+		uncommitted.clear();
+		oldest = Long.MAX_VALUE;
+	}
+
+	/**
+	 * Discards the pending batches and rolls back the current transaction.
+	 * The uncommitted events are counted as dropped. Reloads the dictionary
+	 * and the stack traces, which may contain names and traces of the rolled
+	 * back transaction.
+	 * 
+	 * @param writer
+	 *            The writer connection
+	 * @throws SQLException
+	 *             If rollback fails
+	 */
+	private void rollback(Connection writer) throws SQLException {
+		for (LogEvent event : uncommitted)
+			drops.add(event.getLogger(), event.getLevel());
+		uncommitted.clear();
+		oldest = Long.MAX_VALUE;
+		if (insert != null)
+			insert.clearBatch();
+		if (tokens != null)
+			tokens.clearBatch();
+		writer.rollback();
+		try {
+			dictionary.load(writer);
+			traces.load(writer);
+		} catch (SQLException f) {
+			log.log(Level.SEVERE, "Failed to reload log dictionary", f);
+		}
+	}
+
+	/**
+	 * Deletes at most one chunk of the oldest entries, if the number of
+	 * entries exceeds the high watermark. Unlike the in memory store the ids
+	 * of the persistent tier are not consecutive, thus the entries are counted.
+	 * Partitions older than the retention age and the oldest partition at the
+	 * maximum number of partitions are dropped.
+	 * 
+	 * @throws SQLException
+	 *             If deletion fails
+	 */
+	private void trim() throws SQLException {
+		if (recount) {
+			// entries were cleared by another thread
+			recount = false;
+			count();
+		}
+		long now = System.currentTimeMillis();
+		long bound = partitions.expired(age > 0 ? now - age : Long.MIN_VALUE, now);
+		Connection writer = getWriter();
+		if (rows > high)
+			try (PreparedStatement statement = writer.prepareStatement(BOUND)) {
+				statement.setLong(1, Math.min(chunk, rows - maxEntries));
+				try (ResultSet resultSet = statement.executeQuery()) {
+					if (resultSet.next())
+						bound = Math.max(bound, resultSet.getLong(1));
+				}
+			}
+		if (bound > 0) {
+			try {
+				rows -= partitions.truncate(writer, bound);
+				SearchIndex.truncate(writer, bound);
+				traces.truncate(writer, bound);
+				writer.commit();
+			} catch (SQLException e) {
+				writer.rollback();
+				recount = true;
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * Counts the persistent entries
+	 * 
+	 * @throws SQLException
+	 */
+	private void count() throws SQLException {
+		try (Statement statement = getWriter().createStatement()) {
+			try (ResultSet resultSet = statement.executeQuery(ROWS)) {
+				if (resultSet.next())
+					rows = resultSet.getLong(1);
+			}
+		}
+	}
+
+	/**
+	 * Returns the existing or a new connection of the background thread.
+	 * Disables auto commit and sets the write delay of the new created
+	 * connection.
+	 * 
+	 * @return The open connection
+	 * @throws SQLException
+	 *             If connection creation fails
+	 */
+	private Connection getWriter() throws SQLException {
+		if (writer == null || writer.isClosed()) {
+			writer = DriverManager.getConnection(url);
+			writer.setAutoCommit(false);
+			if (H2LogStore.isPersistent(url))
+				try (Statement statement = writer.createStatement()) {
+					statement.execute(String.format(H2LogStore.WRITE_DELAY, Integer.valueOf(durability == Durability.ASYNC ? writeDelay : 0)));
+				}
+			insert = null;
+			tokens = null;
+		}
+		return writer;
+	}
+
+	/**
+	 * Returns an existing or a new connection, if connection does not exists or
+	 * is closed. Sets the new created connection to auto commit.
+	 * 
+	 * @return The open connection
+	 * @throws SQLException
+	 *             If connection creation fails
+	 */
+	private Connection getConnection() throws SQLException {
+		if (connection == null || connection.isClosed()) {
+			connection = DriverManager.getConnection(url);
+			connection.setAutoCommit(true);
+		}
+		return connection;
+	}
+
+	/**
+	 * Returns the number of selected entries with an id between the given ids
+	 * 
+	 * @param logger
+	 *            The logger name prefix
+	 * @param level
+	 *            The minimum level
+	 * @param after
+	 *            The exclusive lower bound of the ids
+	 * @param bound
+	 *            The exclusive upper bound of the ids
+	 * @return The number of entries
+	 * @throws SQLException
+	 */
+	int size(String logger, int level, long after, long bound) throws SQLException {
+		try (PreparedStatement statement = getConnection().prepareStatement(SIZE)) {
+			H2LogStore.setPrefix(statement, 1, logger);
+			statement.setInt(3, level);
+			statement.setLong(4, after);
+			statement.setLong(5, bound);
+			try (ResultSet resultSet = statement.executeQuery()) {
+				if (resultSet.next())
+					return resultSet.getInt("SIZE");
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Selects a list of entries with an id between the given ids
+	 * 
+	 * @param logger
+	 *            The logger name prefix
+	 * @param level
+	 *            The minimum level
+	 * @param after
+	 *            The exclusive lower bound of the ids
+	 * @param bound
+	 *            The exclusive upper bound of the ids
+	 * @param limit
+	 *            The maximum number of entries
+	 * @param offset
+	 *            The number of entries to skip
+	 * @param locale
+	 *            The locale to format the messages with
+	 * @return a list of log entries
+	 * @throws SQLException
+	 */
+	List<LogEntry> get(String logger, int level, long after, long bound, int limit, int offset, Locale locale) throws SQLException {
+		try (PreparedStatement statement = getConnection().prepareStatement(SELECT)) {
+			H2LogStore.setPrefix(statement, 1, logger);
+			statement.setInt(3, level);
+			statement.setLong(4, after);
+			statement.setLong(5, bound);
+			statement.setInt(6, limit);
+			statement.setInt(7, offset);
+			return H2LogStore.get(statement, locale);
+		}
+	}
+
+	/**
+	 * Returns the number of entries with an id between the given ids created
+	 * within the time range
+	 * 
+	 * @param logger
+	 *            The logger name prefix
+	 * @param level
+	 *            The minimum level
+	 * @param from
+	 *            The inclusive start of the time range
+	 * @param to
+	 *            The exclusive end of the time range
+	 * @param after
+	 *            The exclusive lower bound of the ids
+	 * @param bound
+	 *            The exclusive upper bound of the ids
+	 * @return The number of entries
+	 * @throws SQLException
+	 */
+	int size(String logger, int level, long from, long to, long after, long bound) throws SQLException {
+		return partitions.size(getConnection(), logger, level, from, to, after, bound);
+	}
+
+	/**
+	 * Selects a list of entries with an id between the given ids created
+	 * within the time range
+	 * 
+	 * @param logger
+	 *            The logger name prefix
+	 * @param level
+	 *            The minimum level
+	 * @param from
+	 *            The inclusive start of the time range
+	 * @param to
+	 *            The exclusive end of the time range
+	 * @param after
+	 *            The exclusive lower bound of the ids
+	 * @param bound
+	 *            The exclusive upper bound of the ids
+	 * @param limit
+	 *            The maximum number of entries
+	 * @param offset
+	 *            The number of entries to skip
+	 * @param locale
+	 *            The locale to format the messages with
+	 * @return a list of log entries
+	 * @throws SQLException
+	 */
+	List<LogEntry> get(String logger, int level, long from, long to, long after, long bound, int limit, int offset, Locale locale) throws SQLException {
+		return partitions.get(getConnection(), logger, level, from, to, after, bound, limit, offset, locale);
+	}
+
+	/**
+	 * Searches the entries below the given id containing all words of the
+	 * query, the most recent first
+	 * 
+	 * @param logger
+	 *            The logger name prefix
+	 * @param level
+	 *            The minimum level
+	 * @param query
+	 *            The words to search for
+	 * @param bound
+	 *            The exclusive upper bound of the ids
+	 * @param limit
+	 *            The maximum number of entries
+	 * @param locale
+	 *            The locale to format the messages with
+	 * @return a list of log entries
+	 * @throws SQLException
+	 */
+	List<LogEntry> search(String logger, int level, String query, long bound, int limit, Locale locale) throws SQLException {
+		return SearchIndex.search(getConnection(), search, logger, level, query, bound, limit, locale);
+	}
+
+	/**
+	 * Prepares the cursor query of the entries below the given id
+	 * 
+	 * @param logger
+	 *            The logger name prefix
+	 * @param level
+	 *            The minimum level
+	 * @param bound
+	 *            The exclusive upper bound of the ids
+	 * @return The prepared query, owned by the caller
+	 * @throws SQLException
+	 */
+	PreparedStatement cursor(String logger, int level, long bound) throws SQLException {
+		PreparedStatement statement = getConnection().prepareStatement(SELECT_CURSOR);
+		try {
+			H2LogStore.setPrefix(statement, 1, logger);
+			statement.setInt(3, level);
+			statement.setLong(4, bound);
+		} catch (SQLException e) {
+			statement.close();
+			throw e;
+		}
+		return statement;
+	}
+
+	/**
+	 * Deletes the persistent entries of the logger name prefix
+	 * 
+	 * @param logger
+	 *            The logger name prefix
+	 * @return The number of deleted entries
+	 * @throws SQLException
+	 */
+	int clear(String logger) throws SQLException {
+		try {
+			SearchIndex.clear(getConnection(), logger);
+			return partitions.clear(getConnection(), logger);
+		} finally {
+			recount = true;
+		}
+	}
+}
@@ -0,0 +1,50 @@
+package havis.util.core.common.log;
+
+/**
+ * Policy applied by the {@link SQLHandler} if its log queue is full
+ */
+public enum OverflowPolicy {
+
+	/**
+	 * Removes the oldest queued record to make room for the new one. This is
+	 * the default.
+	 */
+	DROP_OLDEST,
+
+	/**
+	 * Drops new records below the configured level, records at or above the
+	 * level wait for free space up to the configured timeout
+	 */
+	DROP_LEVEL,
+
+	/**
+	 * Waits for free space up to the configured timeout, then drops the new
+	 * record
+	 */
+	BLOCK,
+
+	/**
+	 * Accepts only every n-th record once the queue is filled by three
+	 * quarters, drops new records if the queue is full
+	 */
+	SAMPLE;
+
+	/**
+	 * Returns the policy by name
+	 * 
+	 * @param value
+	 *            The name of the policy
+	 * @param defaultValue
+	 *            The policy to return if the name is unknown
+	 * @return The policy
+	 */
+	static OverflowPolicy valueOf(String value, OverflowPolicy defaultValue) {
+		if (value != null)
+			try {
+				return valueOf(value.trim().toUpperCase());
+			} catch (IllegalArgumentException e) {
+				// fall through
+			}
+		return defaultValue;
+	}
+}
@@ -0,0 +1,207 @@
+package havis.util.core.common.log;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Compact binary encoding of log record parameters. The encoding starts with
+ * a version byte and the number of parameters, followed by a tag byte and the
+ * value of each parameter. Strings and boxed primitives are written without
+ * reflection, integral numbers as zig zag encoded variable length integers.
+ * All other values are embedded as JSON with type information.
+ */
+class ParameterCodec {
+
+	final static byte VERSION = 1;
+
+	final static byte NULL = 0;
+	final static byte STRING = 1;
+	final static byte INTEGER = 2;
+	final static byte LONG = 3;
+	final static byte DOUBLE = 4;
+	final static byte FLOAT = 5;
+	final static byte TRUE = 6;
+	final static byte FALSE = 7;
+	final static byte SHORT = 8;
+	final static byte BYTE = 9;
+	final static byte CHARACTER = 10;
+	final static byte JSON = 11;
+
+	private ParameterCodec() {
+	}
+
+	/**
+	 * Encodes the parameters
+	 * 
+	 * @param parameters
+	 *            The parameters, each must be serializable
+	 * @return The encoded parameters or null if the parameters are null or a
+	 *         parameter could not be encoded
+	 */
+	static byte[] encode(Object[] parameters) {
+		if (parameters == null)
+			return null;
+		ByteArrayOutputStream out = new ByteArrayOutputStream(16 + parameters.length * 8);
+		out.write(VERSION);
+		writeVarLong(out, parameters.length);
+		for (Object parameter : parameters) {
+			if (parameter == null) {
+				out.write(NULL);
+			} else if (parameter instanceof String) {
+				out.write(STRING);
+				writeBytes(out, ((String) parameter).getBytes(StandardCharsets.UTF_8));
+			} else if (parameter instanceof Integer) {
+				out.write(INTEGER);
+				writeVarLong(out, zigZag(((Integer) parameter).intValue()));
+			} else if (parameter instanceof Long) {
+				out.write(LONG);
+				writeVarLong(out, zigZag(((Long) parameter).longValue()));
+			} else if (parameter instanceof Double) {
+				out.write(DOUBLE);
+				writeFixed(out, Double.doubleToRawLongBits(((Double) parameter).doubleValue()), 8);
+			} else if (parameter instanceof Float) {
+				out.write(FLOAT);
+				writeFixed(out, Float.floatToRawIntBits(((Float) parameter).floatValue()), 4);
+			} else if (parameter instanceof Boolean) {
+				out.write(((Boolean) parameter).booleanValue() ? TRUE : FALSE);
+			} else if (parameter instanceof Short) {
+				out.write(SHORT);
+				writeVarLong(out, zigZag(((Short) parameter).shortValue()));
+			} else if (parameter instanceof Byte) {
+				out.write(BYTE);
+				out.write(((Byte) parameter).byteValue());
+			} else if (parameter instanceof Character) {
+				out.write(CHARACTER);
+				writeVarLong(out, ((Character) parameter).charValue());
+			} else {
+				String json = Util.toJson(new Object[] { parameter });
+				if (json == null)
+					return null;
+				out.write(JSON);
+				writeBytes(out, json.getBytes(StandardCharsets.UTF_8));
+			}
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Decodes the parameters
+	 * 
+	 * @param data
+	 *            The encoded parameters
+	 * @return The parameters or null if data is null or invalid
+	 */
+	static Object[] decode(byte[] data) {
+		if (data == null || data.length == 0 || data[0] != VERSION)
+			return null;
+		try {
+			ByteBuffer in = ByteBuffer.wrap(data, 1, data.length - 1);
+			long length = readVarLong(in);
+			if (length < 0 || length > in.remaining())
+				return null;
+			Object[] parameters = new Object[(int) length];
+			for (int i = 0; i < parameters.length; i++) {
+				byte tag = in.get();
+				switch (tag) {
+				case NULL:
+					break;
+				case STRING:
+					parameters[i] = new String(readBytes(in), StandardCharsets.UTF_8);
+					break;
+				case INTEGER:
+					parameters[i] = Integer.valueOf((int) unZigZag(readVarLong(in)));
+					break;
+				case LONG:
+					parameters[i] = Long.valueOf(unZigZag(readVarLong(in)));
+					break;
+				case DOUBLE:
+					parameters[i] = Double.valueOf(Double.longBitsToDouble(in.getLong()));
+					break;
+				case FLOAT:
+					parameters[i] = Float.valueOf(Float.intBitsToFloat(in.getInt()));
+					break;
+				case TRUE:
+					parameters[i] = Boolean.TRUE;
+					break;
+				case FALSE:
+					parameters[i] = Boolean.FALSE;
+					break;
+				case SHORT:
+					parameters[i] = Short.valueOf((short) unZigZag(readVarLong(in)));
+					break;
+				case BYTE:
+					parameters[i] = Byte.valueOf(in.get());
+					break;
+				case CHARACTER:
+					parameters[i] = Character.valueOf((char) readVarLong(in));
+					break;
+				case JSON:
+					parameters[i] = first(Util.fromJson(new String(readBytes(in), StandardCharsets.UTF_8)));
+					break;
+				default:
+					return null;
+				}
+			}
+			return parameters;
+		} catch (BufferUnderflowException | IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	private static Object first(Object value) {
+		if (value instanceof Object[])
+			return ((Object[]) value).length > 0 ? ((Object[]) value)[0] : null;
+		if (value instanceof List)
+			return ((List<?>) value).size() > 0 ? ((List<?>) value).get(0) : null;
+		return value;
+	}
+
+	private static long zigZag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	private static long unZigZag(long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	private static void writeVarLong(ByteArrayOutputStream out, long value) {
+		while ((value & ~0x7FL) != 0) {
+			out.write((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.write((int) value);
+	}
+
+	private static long readVarLong(ByteBuffer in) {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			byte b = in.get();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return value;
+		}
+		throw new IllegalArgumentException("Malformed variable length integer");
+	}
+
+	private static void writeFixed(ByteArrayOutputStream out, long value, int bytes) {
+		for (int shift = (bytes - 1) * 8; shift >= 0; shift -= 8)
+			out.write((int) (value >>> shift));
+	}
+
+	private static void writeBytes(ByteArrayOutputStream out, byte[] bytes) {
+		writeVarLong(out, bytes.length);
+		out.write(bytes, 0, bytes.length);
+	}
+
+	private static byte[] readBytes(ByteBuffer in) {
+		long length = readVarLong(in);
+		if (length < 0 || length > in.remaining())
+			throw new IllegalArgumentException("Invalid length");
+		byte[] bytes = new byte[(int) length];
+		in.get(bytes);
+		return bytes;
+	}
+}
@@ -0,0 +1,487 @@
+package havis.util.core.common.log;
+
+import havis.util.core.common.Environment;
+import havis.util.core.log.LogEntry;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Time partitioned record table. If a partition interval is configured, the
+ * records are inserted into one table per interval and the record table is
+ * replaced by a view over all partitions. Since the worker thread assigns ids
+ * in insertion order, each partition holds a range of ids starting with the
+ * first id of the partition. Retention drops whole partitions instead of
+ * deleting row by row and time range queries only read the partitions
+ * overlapping the range. The partitions are listed in the table
+ * record_partition. Without partitions the record table is used as is.
+ */
+class Partitions {
+
+	private final static Logger log = Logger.getLogger(Partitions.class.getName());
+
+	final static String RECORD = "record";
+	final static String EXISTS = "SELECT COUNT(*) FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_SCHEMA = 'PUBLIC' AND TABLE_NAME = 'RECORD_PARTITION'";
+	final static String CREATE_CATALOG = "CREATE TABLE record_partition (name VARCHAR NOT NULL PRIMARY KEY, first_id BIGINT NOT NULL, since TIMESTAMP NOT NULL, min_millis TIMESTAMP)";
+	final static String CONVERT_CATALOG = "INSERT INTO record_partition (name, first_id, since, min_millis) SELECT '%s', 0, COALESCE(MIN(millis), CURRENT_TIMESTAMP()), MIN(millis) FROM %s";
+	final static String SELECT_CATALOG = "SELECT name, first_id, since, min_millis FROM record_partition ORDER BY first_id ASC";
+	final static String INSERT_CATALOG = "INSERT INTO record_partition (name, first_id, since) VALUES (?, ?, ?)";
+	final static String DELETE_CATALOG = "DELETE FROM record_partition WHERE name = ?";
+	final static String UPDATE_CATALOG = "UPDATE record_partition SET min_millis = ? WHERE name = ?";
+	final static String RENAME = "ALTER TABLE record RENAME TO %s";
+	final static String CREATE = "CREATE TABLE IF NOT EXISTS %s (id INT NOT NULL PRIMARY KEY, millis DATETIME, logger_id INT, source_id INT, level INT, message TEXT, parameters TEXT, params VARBINARY, thrown TEXT, thread INT, trace_id INT)";
+	final static String ADD_TRACE = "ALTER TABLE %s ADD COLUMN IF NOT EXISTS trace_id INT";
+	final static String INDEX = "CREATE INDEX IF NOT EXISTS %1$s_logger_level ON %1$s (logger_id, level, id)";
+	final static String DROP = "DROP TABLE %s";
+	final static String VIEW = "CREATE OR REPLACE VIEW record AS %s";
+	final static String PART = "SELECT id, millis, logger_id, source_id, level, message, parameters, params, thrown, thread, trace_id FROM %s";
+	final static String UNION = " UNION ALL ";
+	final static String ROWS = "SELECT COUNT(*) FROM %s";
+	final static String SIZE = "SELECT COUNT(r.id) AS size FROM %s r JOIN logger_dict l ON r.logger_id = l.id WHERE l.name >= ? AND l.name < ? AND r.level >= ? AND r.millis >= ? AND r.millis < ? AND r.id > ? AND r.id < ?";
+	final static String SELECT = "SELECT r.id, r.millis, l.name AS logger, s.class, s.method, r.level, r.message, r.parameters, r.params, COALESCE(r.thrown, tr.thrown) AS thrown, r.thread FROM %s r LEFT JOIN logger_dict l ON r.logger_id = l.id LEFT JOIN source_dict s ON r.source_id = s.id LEFT JOIN trace tr ON r.trace_id = tr.id WHERE l.name >= ? AND l.name < ? AND r.level >= ? AND r.millis >= ? AND r.millis < ? AND r.id > ? AND r.id < ? ORDER BY r.id ASC LIMIT ? OFFSET ?";
+
+	private static class Partition {
+		final String name;
+		final long firstId;
+		final long since;
+		long minMillis;
+
+		Partition(String name, long firstId, long since, long minMillis) {
+			this.name = name;
+			this.firstId = firstId;
+			this.since = since;
+			this.minMillis = minMillis;
+		}
+	}
+
+	private final List<Partition> partitions = new ArrayList<>();
+	private final long interval;
+	private final int max;
+	private boolean active;
+
+	/**
+	 * Creates new partitions with the configured interval and maximum number
+	 * of partitions
+	 */
+	Partitions() {
+		this(Math.max(0, Environment.LOG_PARTITION_INTERVAL.intValue()) * 60000L, Environment.LOG_PARTITION_MAX.intValue());
+	}
+
+	/**
+	 * Creates new partitions
+	 * 
+	 * @param interval
+	 *            The partition interval in milliseconds, 0 to not partition
+	 * @param max
+	 *            The maximum number of partitions, at least two
+	 */
+	Partitions(long interval, int max) {
+		this.interval = interval;
+		this.max = Math.max(2, max);
+	}
+
+	/**
+	 * Loads the partitions. Converts the record table into the first partition
+	 * if a partition interval is configured and the table is not yet
+	 * partitioned. A partitioned table stays partitioned, even if the interval
+	 * is removed, but no further partitions are created.
+	 * 
+	 * @param writer
+	 *            The writer connection
+	 * @throws SQLException
+	 */
+	synchronized void load(Connection writer) throws SQLException {
+		partitions.clear();
+		try (Statement statement = writer.createStatement()) {
+			try (ResultSet resultSet = statement.executeQuery(EXISTS)) {
+				active = resultSet.next() && resultSet.getInt(1) > 0;
+			}
+			if (!active && interval > 0) {
+				log.log(Level.FINE, "Partitioning log records");
+				String name = RECORD + "_0";
+				statement.execute(String.format(RENAME, name));
+				statement.execute(CREATE_CATALOG);
+				statement.execute(String.format(CONVERT_CATALOG, name, name));
+				statement.execute(String.format(VIEW, String.format(PART, name)));
+				writer.commit();
+				active = true;
+			}
+			if (active) {
+				try (ResultSet resultSet = statement.executeQuery(SELECT_CATALOG)) {
+					while (resultSet.next()) {
+						Timestamp min = resultSet.getTimestamp(4);
+						partitions.add(new Partition(resultSet.getString(1), resultSet.getLong(2), resultSet.getTimestamp(3).getTime(),
+								min == null ? Long.MAX_VALUE : min.getTime()));
+					}
+				}
+				// partitions created before stack traces were stored once
+				for (Partition partition : partitions)
+					statement.execute(String.format(ADD_TRACE, partition.name));
+				view(statement);
+				writer.commit();
+			}
+		}
+	}
+
+	/**
+	 * @return The name of the table to insert new records into
+	 */
+	synchronized String getTable() {
+		return active ? partitions.get(partitions.size() - 1).name : RECORD;
+	}
+
+	/**
+	 * Creates a new partition, if the interval of the current partition
+	 * elapsed. Must be called before the first statement of a transaction,
+	 * because the database commits on schema changes.
+	 * 
+	 * @param writer
+	 *            The writer connection
+	 * @param id
+	 *            The next id, which becomes the first id of the new partition
+	 * @param now
+	 *            The current time
+	 * @return True if a new partition was created
+	 * @throws SQLException
+	 */
+	synchronized boolean rollover(Connection writer, long id, long now) throws SQLException {
+		if (!isDue(now))
+			return false;
+		long since = now - now % interval;
+		Partition partition = new Partition(RECORD + "_" + since, id, since, Long.MAX_VALUE);
+		try (Statement statement = writer.createStatement()) {
+			statement.execute(String.format(CREATE, partition.name));
+			statement.execute(String.format(INDEX, partition.name));
+			try (PreparedStatement insert = writer.prepareStatement(INSERT_CATALOG)) {
+				insert.setString(1, partition.name);
+				insert.setLong(2, partition.firstId);
+				insert.setTimestamp(3, new Timestamp(partition.since));
+				insert.execute();
+			}
+			partitions.add(partition);
+			view(statement);
+			writer.commit();
+		} catch (SQLException e) {
+			partitions.remove(partition);
+			writer.rollback();
+			throw e;
+		}
+		return true;
+	}
+
+	/**
+	 * @param now
+	 *            The current time
+	 * @return True if the interval of the current partition elapsed and a new
+	 *         partition is to be created, i.e. the maximum number of
+	 *         partitions is not reached
+	 */
+	synchronized boolean isDue(long now) {
+		return isElapsed(now) && partitions.size() < max;
+	}
+
+	private boolean isElapsed(long now) {
+		if (!active || interval == 0)
+			return false;
+		Partition last = partitions.get(partitions.size() - 1);
+		return now - now % interval > last.since - last.since % interval;
+	}
+
+	/**
+	 * Lowers the minimum record time of the current partition within the
+	 * current transaction
+	 * 
+	 * @param writer
+	 *            The writer connection
+	 * @param millis
+	 *            The minimum record time of the inserted records
+	 * @throws SQLException
+	 */
+	synchronized void update(Connection writer, long millis) throws SQLException {
+		if (active) {
+			Partition partition = partitions.get(partitions.size() - 1);
+			if (millis < partition.minMillis) {
+				try (PreparedStatement statement = writer.prepareStatement(UPDATE_CATALOG)) {
+					statement.setTimestamp(1, new Timestamp(millis));
+					statement.setString(2, partition.name);
+					statement.execute();
+				}
+				partition.minMillis = millis;
+			}
+		}
+	}
+
+	/**
+	 * Returns the first id of the partition following the partition of the
+	 * given id
+	 * 
+	 * @param id
+	 *            The id
+	 * @return The first id of the following partition or
+	 *         {@link Long#MAX_VALUE}
+	 */
+	synchronized long next(long id) {
+		for (Partition partition : partitions)
+			if (partition.firstId > id)
+				return partition.firstId;
+		return Long.MAX_VALUE;
+	}
+
+	/**
+	 * Returns the first id of the oldest partition, which was created after
+	 * the given time. All records of the preceding partitions were inserted
+	 * before that time. If the maximum number of partitions is reached and the
+	 * interval of the current partition elapsed, the oldest partition expires
+	 * too, thus the next rollover is not blocked.
+	 * 
+	 * @param before
+	 *            The time or {@link Long#MIN_VALUE} to ignore the age
+	 * @param now
+	 *            The current time
+	 * @return The first id or zero if no partition expired
+	 */
+	synchronized long expired(long before, long now) {
+		long bound = 0;
+		for (int i = 1; i < partitions.size() && partitions.get(i).since <= before; i++)
+			bound = partitions.get(i).firstId;
+		if (partitions.size() >= max && isElapsed(now))
+			bound = Math.max(bound, partitions.get(1).firstId);
+		return bound;
+	}
+
+	/**
+	 * Removes all records with an id less than the bound. Drops the
+	 * partitions below the bound, deletes the remaining records from the
+	 * oldest partition within the current transaction.
+	 * 
+	 * @param writer
+	 *            The writer connection
+	 * @param bound
+	 *            The exclusive upper bound of the ids
+	 * @return The number of removed records
+	 * @throws SQLException
+	 */
+	synchronized long truncate(Connection writer, long bound) throws SQLException {
+		long count = 0;
+		if (active) {
+			List<Partition> dropped = new ArrayList<>();
+			while (partitions.size() > 1 && partitions.get(1).firstId <= bound)
+				dropped.add(partitions.remove(0));
+			if (dropped.size() > 0) {
+				try (Statement statement = writer.createStatement()) {
+					// the view must not reference the tables to drop
+					view(statement);
+					for (Partition partition : dropped) {
+						try (ResultSet resultSet = statement.executeQuery(String.format(ROWS, partition.name))) {
+							if (resultSet.next())
+								count += resultSet.getLong(1);
+						}
+						statement.execute(String.format(DROP, partition.name));
+						try (PreparedStatement delete = writer.prepareStatement(DELETE_CATALOG)) {
+							delete.setString(1, partition.name);
+							delete.execute();
+						}
+					}
+					writer.commit();
+				} catch (SQLException e) {
+					// restore the partitions from the catalog
+					writer.rollback();
+					load(writer);
+					throw e;
+				}
+			}
+			if (partitions.get(0).firstId >= bound)
+				return count;
+		}
+		try (PreparedStatement statement = writer.prepareStatement(String.format(H2LogStore.TRUNC, getTable(0)))) {
+			statement.setLong(1, bound);
+			count += statement.executeUpdate();
+		}
+		return count;
+	}
+
+	/**
+	 * Deletes the records of the logger name prefix from all partitions
+	 * 
+	 * @param connection
+	 *            The connection
+	 * @param logger
+	 *            The logger name prefix
+	 * @return The number of deleted records
+	 * @throws SQLException
+	 */
+	synchronized int clear(Connection connection, String logger) throws SQLException {
+		int count = 0;
+		for (int i = 0; i < (active ? partitions.size() : 1); i++)
+			try (PreparedStatement statement = connection.prepareStatement(String.format(H2LogStore.CLEAR, getTable(i)))) {
+				H2LogStore.setPrefix(statement, 1, logger);
+				count += statement.executeUpdate();
+			}
+		return count;
+	}
+
+	/**
+	 * Returns the number of selected records within the time range. The query
+	 * runs without holding the lock of the partitions, thus the worker thread
+	 * is not blocked meanwhile. The query is repeated once, if it failed
+	 * because partitions were dropped meanwhile.
+	 * 
+	 * @param connection
+	 *            The connection
+	 * @param logger
+	 *            The logger name prefix
+	 * @param level
+	 *            The minimum level
+	 * @param from
+	 *            The inclusive start of the time range
+	 * @param to
+	 *            The exclusive end of the time range
+	 * @param after
+	 *            The exclusive lower bound of the ids
+	 * @param bound
+	 *            The exclusive upper bound of the ids
+	 * @return The number of records
+	 * @throws SQLException
+	 */
+	int size(Connection connection, String logger, int level, long from, long to, long after, long bound) throws SQLException {
+		String table = select(from, to);
+		try {
+			return size(connection, table, logger, level, from, to, after, bound);
+		} catch (SQLException e) {
+			String current = select(from, to);
+			if (current == null ? table == null : current.equals(table))
+				throw e;
+			return size(connection, current, logger, level, from, to, after, bound);
+		}
+	}
+
+	private static int size(Connection connection, String table, String logger, int level, long from, long to, long after, long bound) throws SQLException {
+		if (table == null)
+			return 0;
+		try (PreparedStatement statement = connection.prepareStatement(String.format(SIZE, table))) {
+			bind(statement, logger, level, from, to, after, bound);
+			try (ResultSet resultSet = statement.executeQuery()) {
+				if (resultSet.next())
+					return resultSet.getInt("SIZE");
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Selects a list of records within the time range. Only the partitions
+	 * overlapping the time range are read. Like {@link #size} the query runs
+	 * without holding the lock of the partitions.
+	 * 
+	 * @param connection
+	 *            The connection
+	 * @param logger
+	 *            The logger name prefix
+	 * @param level
+	 *            The minimum level
+	 * @param from
+	 *            The inclusive start of the time range
+	 * @param to
+	 *            The exclusive end of the time range
+	 * @param after
+	 *            The exclusive lower bound of the ids
+	 * @param bound
+	 *            The exclusive upper bound of the ids
+	 * @param limit
+	 *            The maximum number of entries
+	 * @param offset
+	 *            The number of entries to skip
+	 * @param locale
+	 *            The locale to format the messages with
+	 * @return a list of log entries
+	 * @throws SQLException
+	 */
+	List<LogEntry> get(Connection connection, String logger, int level, long from, long to, long after, long bound, int limit, int offset, Locale locale)
+			throws SQLException {
+		String table = select(from, to);
+		try {
+			return get(connection, table, logger, level, from, to, after, bound, limit, offset, locale);
+		} catch (SQLException e) {
+			String current = select(from, to);
+			if (current == null ? table == null : current.equals(table))
+				throw e;
+			return get(connection, current, logger, level, from, to, after, bound, limit, offset, locale);
+		}
+	}
+
+	private static List<LogEntry> get(Connection connection, String table, String logger, int level, long from, long to, long after, long bound,
+			int limit, int offset, Locale locale) throws SQLException {
+		if (table == null)
+			return new ArrayList<>();
+		try (PreparedStatement statement = connection.prepareStatement(String.format(SELECT, table))) {
+			bind(statement, logger, level, from, to, after, bound);
+			statement.setInt(8, limit);
+			statement.setInt(9, offset);
+			return H2LogStore.get(statement, locale);
+		}
+	}
+
+	/**
+	 * Returns the table expression of the partitions overlapping the time
+	 * range. Records are inserted after their creation, thus the records of a
+	 * partition were created before the following partition. The expression
+	 * is a copy of the current partitions, which is queried without holding
+	 * the lock.
+	 * 
+	 * @param from
+	 *            The inclusive start of the time range
+	 * @param to
+	 *            The exclusive end of the time range
+	 * @return The table expression or null if no partition overlaps
+	 */
+	private synchronized String select(long from, long to) {
+		if (!active)
+			return RECORD;
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < partitions.size(); i++) {
+			Partition partition = partitions.get(i);
+			boolean last = i == partitions.size() - 1;
+			if (partition.minMillis < to && (last || partitions.get(i + 1).since > from)) {
+				if (builder.length() > 0)
+					builder.append(UNION);
+				builder.append(String.format(PART, partition.name));
+			}
+		}
+		return builder.length() > 0 ? "(" + builder + ")" : null;
+	}
+
+	private static void bind(PreparedStatement statement, String logger, int level, long from, long to, long after, long bound) throws SQLException {
+		H2LogStore.setPrefix(statement, 1, logger);
+		statement.setInt(3, level);
+		statement.setTimestamp(4, new Timestamp(from));
+		statement.setTimestamp(5, new Timestamp(to));
+		statement.setLong(6, after);
+		statement.setLong(7, bound);
+	}
+
+	private String getTable(int index) {
+		return active ? partitions.get(index).name : RECORD;
+	}
+
+	/**
+	 * Replaces the record view by a view over the current partitions
+	 */
+	private void view(Statement statement) throws SQLException {
+		StringBuilder builder = new StringBuilder();
+		for (Partition partition : partitions) {
+			if (builder.length() > 0)
+				builder.append(UNION);
+			builder.append(String.format(PART, partition.name));
+		}
+		statement.execute(String.format(VIEW, builder));
+	}
+}
@@ -0,0 +1,123 @@
+package havis.util.core.common.log;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket rate limits of loggers. A limit is configured per log target
+ * and applies to each logger starting with the target name on its own, the
+ * limit of the longest matching target name wins. Each record takes a token,
+ * the tokens are refilled with the configured rate up to the burst size.
+ */
+class RateLimits {
+
+	private static class Limit {
+		final double rate;
+		final double burst;
+
+		Limit(double rate, double burst) {
+			this.rate = rate;
+			this.burst = burst;
+		}
+	}
+
+	private static class Bucket {
+		final double rate;
+		final double burst;
+		double tokens;
+		long last;
+
+		Bucket(Limit limit, long now) {
+			this.rate = limit.rate / TimeUnit.SECONDS.toNanos(1);
+			this.burst = limit.burst;
+			this.tokens = limit.burst;
+			this.last = now;
+		}
+
+		synchronized boolean acquire(long now) {
+			tokens = Math.min(burst, tokens + (now - last) * rate);
+			last = now;
+			if (tokens < 1)
+				return false;
+			tokens--;
+			return true;
+		}
+	}
+
+	/**
+	 * Bucket of loggers without limit
+	 */
+	private final static Bucket UNLIMITED = new Bucket(new Limit(0, 0), 0) {
+		@Override
+		synchronized boolean acquire(long now) {
+			return true;
+		}
+	};
+
+	private volatile Map<String, Limit> limits = new HashMap<>();
+	private final ConcurrentMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+	/**
+	 * Sets the limit of a target
+	 * 
+	 * @param target
+	 *            The target name
+	 * @param rate
+	 *            The number of records per second
+	 * @param burst
+	 *            The maximum number of records at once
+	 */
+	synchronized void set(String target, double rate, double burst) {
+		Map<String, Limit> limits = new HashMap<>(this.limits);
+		limits.put(target, new Limit(rate, Math.max(1, burst)));
+		this.limits = limits;
+		buckets.clear();
+	}
+
+	/**
+	 * Removes the limit of a target
+	 * 
+	 * @param target
+	 *            The target name
+	 */
+	synchronized void remove(String target) {
+		if (limits.containsKey(target)) {
+			Map<String, Limit> limits = new HashMap<>(this.limits);
+			limits.remove(target);
+			this.limits = limits;
+			buckets.clear();
+		}
+	}
+
+	/**
+	 * Takes a token of the logger
+	 * 
+	 * @param logger
+	 *            The logger name
+	 * @return True if the record may be published, false if the rate of the
+	 *         logger is exceeded
+	 */
+	boolean acquire(String logger) {
+		Map<String, Limit> limits = this.limits;
+		if (limits.isEmpty())
+			return true;
+		if (logger == null)
+			logger = "";
+		Bucket bucket = buckets.get(logger);
+		if (bucket == null) {
+			String match = null;
+			for (Entry<String, Limit> entry : limits.entrySet())
+				if (logger.startsWith(entry.getKey()) && (match == null || entry.getKey().length() > match.length()))
+					match = entry.getKey();
+			bucket = match != null ? new Bucket(limits.get(match), System.nanoTime()) : UNLIMITED;
+			Bucket previous = buckets.putIfAbsent(logger, bucket);
+			if (previous != null)
+				bucket = previous;
+		}
+		return bucket.acquire(System.nanoTime());
+	}
+}
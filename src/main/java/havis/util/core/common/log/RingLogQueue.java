@@ -0,0 +1,192 @@
+package havis.util.core.common.log;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lock free multi producer single consumer log queue based on a preallocated
+ * ring buffer. Each slot carries a sequence number: a slot is free for the
+ * producer claiming position p if its sequence equals p, and is readable by the
+ * consumer at position p if its sequence equals p + 1. Producers claim
+ * positions by a CAS on the tail. The consumer removes elements by a CAS on the
+ * head, producers evicting the oldest element compete for the head the same
+ * way. The slot is released by the thread which advanced the head.
+ * 
+ * @param <E>
+ *            The type of the queued elements
+ */
+class RingLogQueue<E> extends LogQueue<E> {
+
+	private final static long OFFER_BACKOFF_NS = TimeUnit.MICROSECONDS.toNanos(100);
+
+	private final int mask;
+	private final AtomicReferenceArray<E> elements;
+	private final AtomicLongArray sequences;
+	private final AtomicLong tail = new AtomicLong();
+	private final WaitStrategy strategy;
+
+	private final AtomicLong head = new AtomicLong();
+	private volatile boolean waiting;
+	private volatile boolean woken;
+	private volatile Thread consumer;
+
+	/**
+	 * Creates a new ring log queue
+	 * 
+	 * @param capacity
+	 *            The minimum capacity of the queue, rounded up to the next
+	 *            power of two
+	 * @param strategy
+	 *            The strategy of the consumer to wait for elements
+	 */
+	RingLogQueue(int capacity, WaitStrategy strategy) {
+		int size = Integer.highestOneBit(Math.max(2, Math.min(capacity, 1 << 30)) - 1) << 1;
+		this.mask = size - 1;
+		this.elements = new AtomicReferenceArray<>(size);
+		this.sequences = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++)
+			sequences.set(i, i);
+		this.strategy = strategy;
+	}
+
+	/**
+	 * @return The actual capacity of the ring
+	 */
+	int capacity() {
+		return mask + 1;
+	}
+
+	@Override
+	boolean offer(E e) {
+		if (e == null)
+			throw new NullPointerException();
+		long position;
+		do {
+			position = tail.get();
+			long sequence = sequences.get((int) position & mask);
+			if (sequence < position)
+				return false; // full
+			if (sequence > position)
+				continue; // claimed by another producer
+		} while (!tail.compareAndSet(position, position + 1));
+
+		int index = (int) position & mask;
+		elements.lazySet(index, e);
+		// volatile write, must be ordered before reading the waiting flag
+		sequences.set(index, position + 1);
+		if (waiting)
+			LockSupport.unpark(consumer);
+		return true;
+	}
+
+	@Override
+	boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		while (!offer(e)) {
+			if (Thread.interrupted())
+				throw new InterruptedException();
+			long remaining = deadline - System.nanoTime();
+			if (remaining <= 0)
+				return false;
+			LockSupport.parkNanos(this, Math.min(remaining, OFFER_BACKOFF_NS));
+		}
+		return true;
+	}
+
+	@Override
+	E evict() {
+		return next();
+	}
+
+	@Override
+	int remainingCapacity() {
+		return (int) Math.max(0, capacity() - (tail.get() - head.get()));
+	}
+
+	/**
+	 * Removes the next element without waiting, called by the consumer and by
+	 * evicting producers
+	 * 
+	 * @return The element or null if the queue is empty
+	 */
+	private E next() {
+		while (true) {
+			long position = head.get();
+			int index = (int) position & mask;
+			if (sequences.get(index) != position + 1) {
+				if (head.get() == position)
+					return null;
+				continue; // removed by another thread
+			}
+			// the slot is not reused before it is released
+			E e = elements.get(index);
+			if (head.compareAndSet(position, position + 1)) {
+				elements.lazySet(index, null);
+				sequences.lazySet(index, position + mask + 1);
+				return e;
+			}
+		}
+	}
+
+	@Override
+	E take() throws InterruptedException {
+		return poll(0, TimeUnit.NANOSECONDS, false);
+	}
+
+	@Override
+	E poll(long timeout, TimeUnit unit) throws InterruptedException {
+		return poll(timeout, unit, true);
+	}
+
+	private E poll(long timeout, TimeUnit unit, boolean timed) throws InterruptedException {
+		E e = next();
+		if (e != null)
+			return e;
+		if (consumer == null)
+			consumer = Thread.currentThread();
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		try {
+			while (true) {
+				waiting = true;
+				// re-check after announcing to producers
+				if ((e = next()) != null)
+					return e;
+				if (woken) {
+					woken = false;
+					return null;
+				}
+				if (Thread.interrupted())
+					throw new InterruptedException();
+				long remaining = 0;
+				if (timed && (remaining = deadline - System.nanoTime()) <= 0)
+					return null;
+				strategy.idle(this, remaining);
+			}
+		} finally {
+			waiting = false;
+		}
+	}
+
+	@Override
+	int drainTo(Collection<? super E> c, int max) {
+		int count = 0;
+		E e;
+		while (count < max && (e = next()) != null) {
+			c.add(e);
+			count++;
+		}
+		return count;
+	}
+
+	@Override
+	void wakeup() {
+		woken = true;
+		Thread consumer = this.consumer;
+		if (consumer != null)
+			LockSupport.unpark(consumer);
+	}
+}
@@ -3,51 +3,99 @@ package havis.util.core.common.log;
 import havis.util.core.common.Environment;
 import havis.util.core.log.LogConfiguration;
 import havis.util.core.log.LogEntry;
+import havis.util.core.log.LogLevel;
 import havis.util.core.log.LogUtil;
 
-import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.sql.SQLException;
-import java.sql.Statement;
-import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.LogRecord;
 import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
 
 public class SQLHandler extends Handler implements Runnable {
 
 	private final static Logger log = Logger.getLogger(SQLHandler.class.getName());
+	private final static long FLUSH_TIMEOUT_MS = 5000;
 
-	final static String CREATE = "CREATE TABLE IF NOT EXISTS record (id SERIAL NOT NULL PRIMARY KEY, millis DATETIME, logger TEXT, class TEXT, method TEXT, level INT, message TEXT, parameters TEXT, thrown TEXT, thread INT)";
-	final static String INSERT = "INSERT INTO record (millis, logger, class, method, level, message, parameters, thrown, thread) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
-	final static String SIZE = "SELECT COUNT(id) AS size FROM record WHERE logger like ? and level >= ?";
-	final static String SELECT = "SELECT id, millis, logger, class, method, level, message, parameters, thrown, thread FROM record WHERE logger LIKE ? AND level >= ? ORDER BY id ASC LIMIT ? OFFSET ?";
-	final static String CLEAR = "DELETE FROM record WHERE logger like ?";
-	final static String TRUNC = "DELETE FROM record WHERE id < ?";
-
-	private Connection connection;
 	private Thread thread;
-	private BlockingQueue<LogRecord> queue = new LinkedBlockingQueue<>();
+	private int capacity = Math.max(1, Environment.LOG_QUEUE_CAPACITY.intValue());
+	private LogQueue<LogEvent> queue = LogQueue.create(Environment.LOG_QUEUE_TYPE, capacity,
+			WaitStrategy.valueOf(Environment.LOG_QUEUE_WAIT, WaitStrategy.PARK));
+	private OverflowPolicy policy = OverflowPolicy.valueOf(Environment.LOG_QUEUE_POLICY, OverflowPolicy.DROP_OLDEST);
+	private int threshold = Util.toInt(Util.valueOf(Environment.LOG_QUEUE_LEVEL));
+	private int timeout = Math.max(0, Environment.LOG_QUEUE_TIMEOUT.intValue());
+	private int sample = Math.max(1, Environment.LOG_QUEUE_SAMPLE.intValue());
+	private AtomicLong sampled = new AtomicLong();
+	private boolean deferThrown = Environment.LOG_DEFER_THROWN.booleanValue();
+	private DropStatistics drops = new DropStatistics();
+	private Durability durability = Durability.valueOf(Environment.LOG_DURABILITY, Durability.RECORD);
+	private int writeDelay = Math.max(0, Environment.LOG_WRITE_DELAY.intValue());
+	private int groupInterval = Math.max(0, Environment.LOG_GROUP_INTERVAL.intValue());
+	private int groupCount = Math.max(1, Environment.LOG_GROUP_COUNT.intValue());
+	private CommitStatistics statistics = new CommitStatistics();
+	private long age = Math.max(0, Environment.LOG_RETENTION_AGE.intValue()) * 60000L;
+	private Suppressor suppressor;
+	private RateLimits limits = new RateLimits();
+	private LogStore store;
 	private Boolean enable;
-	private int maxEntries;
-	private String url;
+	private int batchSize;
+	/**
+	 * The last requested and the last completed flush, guarded by flushes
+	 */
+	private final Object flushes = new Object();
+	private volatile long requested;
+	private long completed;
+	private int batchTimeout;
 
 	/**
-	 * Creates and starts the worker thread.
+	 * Creates the log store and starts the worker thread. Entries are stored
+	 * in the H2 database unless the segment store is configured.
 	 */
 	public void init(ClassLoader loader) {
 		LogConfiguration config = LogConfigManager.getInstance();
-		maxEntries = config.getMaxEntries();
-		url = config.isPersistent() ? Environment.URL_PERSISTENT : Environment.URL;
+		int maxEntries = config.getMaxEntries();
+		long high = Math.max(maxEntries, (long) maxEntries * Environment.LOG_RETENTION_HIGH.intValue() / 100);
+		int chunk = Math.max(1, Environment.LOG_RETENTION_CHUNK.intValue());
+		if (config.isPersistent() && Environment.LOG_TIER_LEVEL.isEmpty() && "segment".equalsIgnoreCase(Environment.LOG_STORE)) {
+			// entries are appended to memory mapped segment files instead
+			store = new SegmentLogStore(new File(Environment.PATH, "log"), Math.max(1, Environment.LOG_SEGMENT_SIZE.intValue()) * 1024, maxEntries, age,
+					durability, writeDelay, groupInterval, groupCount, statistics);
+		} else {
+			String url = config.isPersistent() ? Environment.URL_PERSISTENT : Environment.URL;
+			LogTier tier = null;
+			if (config.isPersistent() && !Environment.LOG_TIER_LEVEL.isEmpty()) {
+				// entries are kept in memory and spilled to the persistent
+				// database
+				url = Environment.URL;
+				tier = new LogTier(Environment.URL_PERSISTENT, Util.toInt(Util.valueOf(Environment.LOG_TIER_LEVEL)), maxEntries, high, chunk, statistics,
+						drops);
+			}
+			if (age > 0 && Environment.LOG_PARTITION_INTERVAL.intValue() <= 0) {
+				// whole partitions are dropped by age only
+				log.log(Level.WARNING, "Log retention age is ignored without log partition interval");
+				age = 0;
+			}
+			store = new H2LogStore(url, tier, maxEntries, high, chunk, age, durability, writeDelay, groupInterval, groupCount, statistics, loader);
+		}
+		batchSize = Math.max(1, Environment.LOG_BATCH_SIZE.intValue());
+		batchTimeout = Math.max(0, Environment.LOG_BATCH_TIMEOUT.intValue());
+		if (Environment.LOG_SUPPRESS_WINDOW.intValue() > 0)
+			suppressor = new Suppressor(Environment.LOG_SUPPRESS_WINDOW.intValue());
 
 		thread = new Thread(this);
 		thread.setContextClassLoader(loader);
@@ -56,18 +104,133 @@ public class SQLHandler extends Handler implements Runnable {
 
 	@Override
 	/**
-	 * Adds the log record to the queue
+	 * Adds the log record to the queue. Suppresses repetitions within the
+	 * suppression window and drops records exceeding the rate limit of their
+	 * logger. Applies the overflow policy if the queue is full and counts
+	 * dropped records.
 	 */
 	public void publish(LogRecord record) {
-		if (enable != Boolean.FALSE)
-			queue.add(record);
+		if (enable != Boolean.FALSE) {
+			if (suppressor != null && !suppressor.accept(record))
+				return;
+			if (!limits.acquire(record.getLoggerName())) {
+				drops.add(record.getLoggerName(), Util.toInt(record.getLevel()));
+				return;
+			}
+			LogEvent event = new LogEvent(record, deferThrown);
+			if (!offer(event))
+				drops.add(event.getLogger(), event.getLevel());
+		}
+	}
+
+	/**
+	 * Offers the log event to the queue with respect to the overflow policy
+	 * 
+	 * @param event
+	 *            The log event
+	 * @return True if the event was queued, false if it was dropped
+	 */
+	private boolean offer(LogEvent event) {
+		switch (policy) {
+		case SAMPLE:
+			if (queue.remainingCapacity() < capacity / 4 && sampled.incrementAndGet() % sample != 0)
+				return false;
+			return queue.offer(event);
+		case DROP_LEVEL:
+			if (queue.offer(event))
+				return true;
+			if (event.getLevel() < threshold)
+				return false;
+			return offer(event, timeout);
+		case BLOCK:
+			return queue.offer(event) || offer(event, timeout);
+		default:
+			while (!queue.offer(event)) {
+				LogEvent oldest = queue.evict();
+				if (oldest == null)
+					return false;
+				drops.add(oldest.getLogger(), oldest.getLevel());
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Offers the log event to the queue, waiting for free space
+	 * 
+	 * @param event
+	 *            The log event
+	 * @param timeout
+	 *            The maximum time to wait in milliseconds
+	 * @return True if the event was queued, false otherwise
+	 */
+	private boolean offer(LogEvent event, long timeout) {
+		try {
+			return queue.offer(event, timeout, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/**
+	 * Sets the rate limit of the loggers of a target
+	 * 
+	 * @param target
+	 *            The target name
+	 * @param rate
+	 *            The number of records per second and logger
+	 * @param burst
+	 *            The maximum number of records at once
+	 */
+	void setRateLimit(String target, double rate, double burst) {
+		limits.set(target, rate, burst);
+	}
+
+	/**
+	 * Removes the rate limit of a target
+	 * 
+	 * @param target
+	 *            The target name
+	 */
+	void removeRateLimit(String target) {
+		limits.remove(target);
+	}
+
+	/**
+	 * @return The number of dropped records per logger
+	 */
+	Map<String, Long> getDroppedLoggers() {
+		return drops.getLoggers();
 	}
 
-	@Override
 	/**
-	 * Does nothing
+	 * @return The number of dropped records per level
 	 */
+	Map<LogLevel, Long> getDroppedLevels() {
+		return drops.getLevels();
+	}
+
+	/**
+	 * Waits until the records published before are appended and committed by
+	 * the store, at most for the flush timeout
+	 */
+	@Override
 	public void flush() {
+		if (enable != Boolean.TRUE || Thread.currentThread() == thread)
+			return;
+		synchronized (flushes) {
+			long request = ++requested;
+			queue.wakeup();
+			long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(FLUSH_TIMEOUT_MS);
+			try {
+				long remaining;
+				while (completed < request && enable == Boolean.TRUE && (remaining = deadline - System.nanoTime()) > 0)
+					TimeUnit.NANOSECONDS.timedWait(flushes, remaining);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
 	}
 
 	/**
@@ -77,6 +240,7 @@ public class SQLHandler extends Handler implements Runnable {
 	public void close() {
 		if (enable == Boolean.TRUE) {
 			enable = false;
+			queue.wakeup();
 
 			if (thread != null) {
 				try {
@@ -96,90 +260,118 @@ public class SQLHandler extends Handler implements Runnable {
 	}
 
 	/**
-	 * Establishes a database connection and creates the database schema.
-	 * Enables the log handler. Waits for log entries on the queue and inserts
-	 * each entry into the database.
+	 * Opens the log store and enables the log handler. Waits for log entries
+	 * on the queue and appends them batch wise to the store. Wakes up after
+	 * the timeout of the store to let it write pending changes and to close
+	 * suppression windows. On flush the queue is drained without waiting and
+	 * the store commits the appended events. Closes the store on termination.
 	 */
 	@Override
 	public void run() {
 		try {
-			try (Statement statement = getConnection().createStatement()) {
-				statement.execute(CREATE);
-			}
+			store.open();
 			enable = true;
-		} catch (SQLException e) {
+		} catch (IOException e) {
 			enable = false;
 			log.log(Level.SEVERE, "Failed to initializes logging", e);
 		}
 
+		List<LogEvent> events = new ArrayList<>(batchSize);
 		while (enable) {
 			try {
-				LogRecord record = queue.poll(100, TimeUnit.MILLISECONDS);
-				if (record != null) {
-					long id = 0;
-					try (PreparedStatement statement = getConnection().prepareStatement(INSERT)) {
-
-						statement.setTimestamp(1, new Timestamp(record.getMillis()));
-						statement.setString(2, record.getLoggerName());
-						statement.setString(3, record.getSourceClassName());
-						statement.setString(4, record.getSourceMethodName());
-						statement.setInt(5, Util.toInt(record.getLevel()));
-
-						if (Util.isSerializable(record.getParameters())) {
-							statement.setString(6, record.getMessage());
-							statement.setString(7, Util.toJson(record.getParameters()));
-						} else {
-							statement.setString(6, Util.format(record.getMessage(), Locale.getDefault(), record.getParameters()));
-							statement.setString(7, null);
-						}
-
-						statement.setString(8, Util.toString(record.getThrown()));
-						statement.setLong(9, record.getThreadID());
-						statement.execute();
-						try (ResultSet rs = statement.getGeneratedKeys()) {
-							if (rs.next())
-								id = rs.getLong(1);
-						}
+				// events published before the flush request are queued
+				long request = requested;
+				boolean flushing = request > completed;
+				long timeout = flushing ? 0 : store.getTimeout();
+				if (suppressor != null)
+					timeout = timeout < 0 ? suppressor.getWindow() : Math.min(timeout, suppressor.getWindow());
+				LogEvent event = timeout < 0 ? queue.take() : queue.poll(timeout, TimeUnit.MILLISECONDS);
+				if (event != null)
+					events.add(event);
+				if (event != null || flushing)
+					drain(events);
+				if (suppressor != null)
+					suppressor.expire(System.currentTimeMillis(), events);
+				store.append(events);
+				if (flushing && events.size() < batchSize) {
+					// the queue was drained completely
+					store.flush();
+					synchronized (flushes) {
+						completed = request;
+						flushes.notifyAll();
 					}
-					if (id > maxEntries)
-						try (PreparedStatement statement = getConnection().prepareStatement(TRUNC)) {
-							statement.setLong(1, id - maxEntries + 1);
-							statement.execute();
-						}
 				}
 			} catch (Exception e) {
 				e.printStackTrace();
+			} finally {
+				events.clear();
 			}
 		}
 
 		try {
-			if (connection != null) {
-				connection.close();
-				connection = null;
-			}
-		} catch (SQLException e) {
-			log.log(Level.SEVERE, "Failed to close database connection", e);
+			store.close();
+		} catch (IOException e) {
+			log.log(Level.SEVERE, "Failed to close log store", e);
 		}
 	}
 
 	/**
-	 * Returns an existing or a new connection, if connection does not exists or
-	 * is closed. Sets the new created connection to auto commit.
+	 * Drains further events from the queue until the batch size is reached or
+	 * the batch timeout elapsed. If a flush was requested, the queue is
+	 * drained without waiting for further events.
 	 * 
-	 * @return The open connection
-	 * @throws SQLException
-	 *             If connection creation fails
+	 * @param events
+	 *            The list to drain to
+	 * @throws InterruptedException
+	 *             If interrupted while waiting for events
 	 */
-	Connection getConnection() throws SQLException {
-		if (connection == null || connection.isClosed()) {
-			connection = DriverManager.getConnection(url);
-			connection.setAutoCommit(true);
+	private void drain(List<LogEvent> events) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(batchTimeout);
+		while (events.size() < batchSize) {
+			if (queue.drainTo(events, batchSize - events.size()) == 0) {
+				// the wakeup of a flush may have been drained already
+				if (requested > completed)
+					break;
+				long remaining = deadline - System.nanoTime();
+				if (remaining <= 0)
+					break;
+				LogEvent event = queue.poll(remaining, TimeUnit.NANOSECONDS);
+				if (event == null)
+					break;
+				events.add(event);
+			}
 		}
-		return connection;
 	}
 
 	/**
-	 * Returns the number of selected rows.
+	 * @return The commit latency and loss window statistics
+	 */
+	CommitStatistics getStatistics() {
+		return statistics;
+	}
+
+	/**
+	 * Registers a target to maintain entry counters for
+	 * 
+	 * @param target
+	 *            The target name
+	 */
+	void register(String target) {
+		store.register(target);
+	}
+
+	/**
+	 * Unregisters a target
+	 * 
+	 * @param target
+	 *            The target name
+	 */
+	void unregister(String target) {
+		store.unregister(target);
+	}
+
+	/**
+	 * Returns the number of selected rows
 	 * 
 	 * @param name
 	 * @param level
@@ -187,20 +379,16 @@ public class SQLHandler extends Handler implements Runnable {
 	 * @throws SQLException
 	 */
 	int size(String name, int level) throws SQLException {
-		try (PreparedStatement statement = getConnection().prepareStatement(SIZE)) {
-			statement.setString(1, name + "%");
-			statement.setInt(2, level);
-			try (ResultSet resultSet = statement.executeQuery()) {
-				if (resultSet.next())
-					return resultSet.getInt("SIZE");
-			}
+		try {
+			return store.size(name, level);
+		} catch (IOException e) {
+			throw toSQLException(e);
 		}
-		return 0;
 	}
 
 	public static void main(String[] args) throws Exception {
-		if (args == null || args.length != 1) {
-			System.err.println("Usage: SQLHandler <log file path>");
+		if (args == null || args.length < 1 || args.length > 2) {
+			System.err.println("Usage: SQLHandler <log file path> [<output file>[.gz]]");
 			return;
 		}
 		String file = args[0];
@@ -208,37 +396,48 @@ public class SQLHandler extends Handler implements Runnable {
 			file = file.substring(0, file.length() - 6);
 		}
 
-		SQLHandler handler = new SQLHandler();
-		handler.url = "jdbc:h2:" + file;
-		handler.maxEntries = Integer.MAX_VALUE;
-		
-		for (LogEntry entry : handler.getAll()) {
-			System.out.println(LogUtil.format(entry));
+		String output = args.length > 1 ? args[1] : null;
+		// the exported file is not modified
+		try (OutputStream stream = output != null ? new FileOutputStream(output) : System.out;
+				OutputStream compressed = output != null && output.endsWith(".gz") ? new GZIPOutputStream(stream, 65536) : stream;
+				Writer writer = new BufferedWriter(new OutputStreamWriter(compressed, StandardCharsets.UTF_8), 65536);
+				LogCursor cursor = H2LogStore.export(file, Math.max(1, Environment.LOG_FETCH_SIZE.intValue()))) {
+			while (cursor.hasNext()) {
+				writer.write(LogUtil.format(cursor.next()));
+				writer.write(System.lineSeparator());
+			}
+		} catch (Exception e) {
+			// do not leave a truncated output file
+			if (output != null)
+				new File(output).delete();
+			throw e;
 		}
 	}
 
-	private List<LogEntry> getAll() throws SQLException {
-		List<LogEntry> entries = new ArrayList<>();
-
-		try (PreparedStatement statement = getConnection().prepareStatement("SELECT id, millis, logger, class, method, level, message, parameters, thrown, thread FROM record ORDER BY id ASC")) {
-			statement.execute();
-			try (ResultSet resultSet = statement.getResultSet()) {
-				while (resultSet.next()) {
-					String message = resultSet.getString("message");
-					String parameters = resultSet.getString("parameters");
-					if (message != null && parameters != null)
-						message = Util.format(message, Locale.US, Util.fromJson(parameters));
-					entries.add(new LogEntry(resultSet.getLong("id"), resultSet.getTimestamp("millis").getTime(), resultSet.getString("logger"), resultSet.getString("class"),
-							resultSet.getString("method"), Util.valueOf(resultSet.getInt("level")), message, parameters, resultSet.getString("thrown"), resultSet.getInt("thread")));
-				}
-			}
+	/**
+	 * Opens a cursor over the entries selected by the given parameters. The
+	 * entries are read while iterating, the cursor has to be closed if not
+	 * iterated to the end.
+	 * 
+	 * @param logger
+	 *            The logger name prefix
+	 * @param level
+	 *            The minimum level
+	 * @param locale
+	 *            The locale to format the messages with
+	 * @return The cursor
+	 * @throws SQLException
+	 */
+	public LogCursor cursor(String logger, int level, Locale locale) throws SQLException {
+		try {
+			return store.cursor(logger, level, locale);
+		} catch (IOException e) {
+			throw toSQLException(e);
 		}
-
-		return entries;
 	}
 
 	/**
-	 * Selects a list of entries from the database by the given parameters.
+	 * Selects a list of entries by the given parameters
 	 * 
 	 * @param logger
 	 * @param level
@@ -248,36 +447,155 @@ public class SQLHandler extends Handler implements Runnable {
 	 * @throws SQLException
 	 */
 	public List<LogEntry> get(String logger, int level, int limit, int offset, Locale locale) throws SQLException {
-		List<LogEntry> entries = new ArrayList<>();
-
-		try (PreparedStatement statement = getConnection().prepareStatement(SELECT)) {
-
-			statement.setString(1, logger + "%");
-			statement.setInt(2, level);
-			statement.setInt(3, limit);
-			statement.setInt(4, offset);
-
-			statement.execute();
-			try (ResultSet resultSet = statement.getResultSet()) {
-				while (resultSet.next()) {
-					String message = resultSet.getString("message");
-					String parameters = resultSet.getString("parameters");
-					if (message != null && parameters != null)
-						message = Util.format(message, locale, Util.fromJson(parameters));
-					entries.add(new LogEntry(resultSet.getLong("id"), resultSet.getTimestamp("millis").getTime(), resultSet.getString("logger"), resultSet
-							.getString("class"), resultSet.getString("method"), Util.valueOf(resultSet.getInt("level")), message, parameters, resultSet
-							.getString("thrown"), resultSet.getInt("thread")));
-				}
-			}
+		return get(logger, level, Long.MIN_VALUE, Long.MAX_VALUE, 0, limit, offset, locale);
+	}
+
+	/**
+	 * Selects a list of entries with an id greater than the given id. Unlike
+	 * paging by offset the costs do not grow with the position of the page.
+	 * 
+	 * @param logger
+	 *            The logger name prefix
+	 * @param level
+	 *            The minimum level
+	 * @param after
+	 *            The id of the last entry of the previous page, or zero
+	 * @param limit
+	 *            The maximum number of entries
+	 * @param locale
+	 *            The locale to format the messages with
+	 * @return a list of log entries
+	 * @throws SQLException
+	 */
+	public List<LogEntry> getAfter(String logger, int level, long after, int limit, Locale locale) throws SQLException {
+		return get(logger, level, Long.MIN_VALUE, Long.MAX_VALUE, after, limit, 0, locale);
+	}
+
+	/**
+	 * Selects a list of entries created within the time range
+	 * 
+	 * @param logger
+	 *            The logger name prefix
+	 * @param level
+	 *            The minimum level
+	 * @param from
+	 *            The inclusive start of the time range in milliseconds
+	 * @param to
+	 *            The exclusive end of the time range in milliseconds
+	 * @param limit
+	 *            The maximum number of entries
+	 * @param offset
+	 *            The number of entries to skip
+	 * @param locale
+	 *            The locale to format the messages with
+	 * @return a list of log entries
+	 * @throws SQLException
+	 */
+	public List<LogEntry> get(String logger, int level, long from, long to, int limit, int offset, Locale locale) throws SQLException {
+		return get(logger, level, from, to, 0, limit, offset, locale);
+	}
+
+	private List<LogEntry> get(String logger, int level, long from, long to, long after, int limit, int offset, Locale locale) throws SQLException {
+		try {
+			return store.get(logger, level, from, to, after, limit, offset, locale);
+		} catch (IOException e) {
+			throw toSQLException(e);
+		}
+	}
+
+	/**
+	 * Returns the number of entries created within the time range
+	 * 
+	 * @param logger
+	 *            The logger name prefix
+	 * @param level
+	 *            The minimum level
+	 * @param from
+	 *            The inclusive start of the time range in milliseconds
+	 * @param to
+	 *            The exclusive end of the time range in milliseconds
+	 * @return The number of entries
+	 * @throws SQLException
+	 */
+	int size(String logger, int level, long from, long to) throws SQLException {
+		try {
+			return store.size(logger, level, from, to);
+		} catch (IOException e) {
+			throw toSQLException(e);
+		}
+	}
+
+	/**
+	 * Searches the entries containing all words of the query, the most recent
+	 * first
+	 * 
+	 * @param logger
+	 *            The logger name prefix
+	 * @param level
+	 *            The minimum level
+	 * @param query
+	 *            The words to search for
+	 * @param limit
+	 *            The maximum number of entries
+	 * @param locale
+	 *            The locale to format the messages with
+	 * @return a list of log entries
+	 * @throws SQLException
+	 */
+	public List<LogEntry> search(String logger, int level, String query, int limit, Locale locale) throws SQLException {
+		try {
+			return store.search(logger, level, query, limit, locale);
+		} catch (IOException e) {
+			throw toSQLException(e);
 		}
+	}
 
-		return entries;
+	/**
+	 * Creates a log entry from stored fields, formats the message with the
+	 * decoded parameters
+	 * 
+	 * @param parameters
+	 *            The JSON encoded parameters of entries written before binary
+	 *            encoding or null
+	 * @param params
+	 *            The binary encoded parameters or null
+	 * @param locale
+	 *            The locale to format the message with
+	 * @return The log entry
+	 */
+	static LogEntry entry(long id, long millis, String logger, String clazz, String method, int level, String message, String parameters, byte[] params,
+			String thrown, int thread, Locale locale) {
+		Object values = null;
+		if (params != null) {
+			// binary encoded parameters, JSON is kept for the entry
+			values = ParameterCodec.decode(params);
+			parameters = Util.toJson(values);
+		} else if (message != null && parameters != null) {
+			// rows written before binary encoding
+			values = Util.fromJson(parameters);
+		}
+		if (message != null && values != null)
+			message = Util.format(message, locale, values);
+		return new LogEntry(id, millis, logger, clazz, method, Util.valueOf(level), message, parameters, thrown, thread);
 	}
 
 	public int clear(String logger) throws SQLException {
-		try (PreparedStatement statement = getConnection().prepareStatement(CLEAR)) {
-			statement.setString(1, logger + "%");
-			return statement.executeUpdate();
+		try {
+			return store.clear(logger);
+		} catch (IOException e) {
+			throw toSQLException(e);
 		}
 	}
+
+	/**
+	 * Returns the SQL exception of a failed database access or wraps the
+	 * exception of another store
+	 * 
+	 * @param e
+	 *            The exception of the store
+	 * @return The SQL exception
+	 */
+	private static SQLException toSQLException(IOException e) {
+		return e.getCause() instanceof SQLException ? (SQLException) e.getCause() : new SQLException(e);
+	}
 }
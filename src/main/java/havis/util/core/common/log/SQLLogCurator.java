@@ -30,6 +30,8 @@ public class SQLLogCurator implements LogCurator {
 	final static String NAME = "log.name";
 	final static String LABEL = "log.label";
 	final static String LEVEL = "log.level";
+	final static String RATE = "log.rate";
+	final static String BURST = "log.burst";
 
 	private static SQLHandler handler = new SQLHandler();
 
@@ -102,21 +104,195 @@ public class SQLLogCurator implements LogCurator {
 
 	@Override
 	public List<LogEntry> get(String target, LogLevel level, int limit, int offset, Locale locale) throws LogException {
-		List<LogEntry> list = new ArrayList<>();
 		try {
-			for (LogEntry record : handler.get(target, Util.toInt(level), limit, offset, locale)) {
-				list.add(record);
-			}
+			return handler.get(target, Util.toInt(level), limit, offset, locale);
+		} catch (SQLException e) {
+			throw new LogException("Failed to get log entries", e);
+		}
+	}
+
+	/**
+	 * Opens a cursor over all log entries of the target with at least the
+	 * given level. The entries are read while iterating, so the memory usage
+	 * does not depend on the number of entries. The cursor has to be closed if
+	 * it is not iterated to the end.
+	 * 
+	 * @param target
+	 *            The logger name prefix
+	 * @param level
+	 *            The minimum level
+	 * @param locale
+	 *            The locale to format the messages with
+	 * @return The cursor
+	 * @throws LogException
+	 *             If the query fails
+	 */
+	public LogCursor getCursor(String target, LogLevel level, Locale locale) throws LogException {
+		try {
+			return handler.cursor(target, Util.toInt(level), locale);
+		} catch (SQLException e) {
+			throw new LogException("Failed to get log entries", e);
+		}
+	}
+
+	/**
+	 * Returns the log entries following the entry with the given id. Use the
+	 * id of the last entry of a page to retrieve the next page.
+	 * 
+	 * @param target
+	 *            The logger name prefix
+	 * @param level
+	 *            The minimum level
+	 * @param after
+	 *            The id of the last entry of the previous page, or zero for
+	 *            the first page
+	 * @param limit
+	 *            The maximum number of entries
+	 * @param locale
+	 *            The locale to format the messages with
+	 * @return The log entries
+	 * @throws LogException
+	 *             If the entries could not be retrieved
+	 */
+	public List<LogEntry> getAfter(String target, LogLevel level, long after, int limit, Locale locale) throws LogException {
+		try {
+			return handler.getAfter(target, Util.toInt(level), after, limit, locale);
 		} catch (SQLException e) {
 			throw new LogException("Failed to get log entries", e);
 		}
-		return list;
+	}
+
+	/**
+	 * Returns the log entries created within the given time range. With a
+	 * partitioned log only the partitions overlapping the time range are read.
+	 * 
+	 * @param target
+	 *            The logger name prefix
+	 * @param level
+	 *            The minimum level
+	 * @param from
+	 *            The inclusive start of the time range in milliseconds
+	 * @param to
+	 *            The exclusive end of the time range in milliseconds
+	 * @param limit
+	 *            The maximum number of entries
+	 * @param offset
+	 *            The number of entries to skip
+	 * @param locale
+	 *            The locale to format the messages with
+	 * @return The log entries
+	 * @throws LogException
+	 *             If the entries could not be retrieved
+	 */
+	public List<LogEntry> get(String target, LogLevel level, long from, long to, int limit, int offset, Locale locale) throws LogException {
+		try {
+			return handler.get(target, Util.toInt(level), from, to, limit, offset, locale);
+		} catch (SQLException e) {
+			throw new LogException("Failed to get log entries", e);
+		}
+	}
+
+	/**
+	 * Returns the number of log entries created within the given time range
+	 * 
+	 * @param target
+	 *            The logger name prefix
+	 * @param level
+	 *            The minimum level
+	 * @param from
+	 *            The inclusive start of the time range in milliseconds
+	 * @param to
+	 *            The exclusive end of the time range in milliseconds
+	 * @return The number of entries
+	 * @throws LogException
+	 *             If the entries could not be counted
+	 */
+	public int size(String target, LogLevel level, long from, long to) throws LogException {
+		try {
+			return handler.size(target, Util.toInt(level), from, to);
+		} catch (SQLException e) {
+			throw new LogException("Failed to get log entry count", e);
+		}
+	}
+
+	/**
+	 * Searches the log entries containing all words of the query in their
+	 * message, parameters or exception, the most recent first
+	 * 
+	 * @param target
+	 *            The logger name prefix
+	 * @param level
+	 *            The minimum level
+	 * @param query
+	 *            The words to search for
+	 * @param limit
+	 *            The maximum number of entries
+	 * @param locale
+	 *            The locale to format the messages with
+	 * @return The log entries
+	 * @throws LogException
+	 *             If the search fails
+	 */
+	public List<LogEntry> search(String target, LogLevel level, String query, int limit, Locale locale) throws LogException {
+		try {
+			return handler.search(target, Util.toInt(level), query, limit, locale);
+		} catch (SQLException e) {
+			throw new LogException("Failed to search log entries", e);
+		}
+	}
+
+	/**
+	 * Returns the number of log records dropped per logger, because the log
+	 * queue was full, the rate limit of the logger was exceeded or the
+	 * records could not be written to the persistent tier
+	 * 
+	 * @return The number of dropped records per logger name
+	 */
+	public Map<String, Long> getDroppedLoggers() {
+		return handler.getDroppedLoggers();
+	}
+
+	/**
+	 * Returns the number of log records dropped per level, because the log
+	 * queue was full, the rate limit of the logger was exceeded or the
+	 * records could not be written to the persistent tier
+	 * 
+	 * @return The number of dropped records per level
+	 */
+	public Map<LogLevel, Long> getDroppedLevels() {
+		return handler.getDroppedLevels();
+	}
+
+	/**
+	 * Returns the commit latency and the loss window achieved with the
+	 * configured durability
+	 * 
+	 * @return The commit statistics
+	 */
+	public CommitStatistics getCommitStatistics() {
+		return handler.getStatistics();
+	}
+
+	/**
+	 * @return The number of message formats taken from the format cache
+	 */
+	public long getFormatCacheHits() {
+		return Util.formats.getHits();
+	}
+
+	/**
+	 * @return The number of message formats compiled because they were not
+	 *         cached
+	 */
+	public long getFormatCacheMisses() {
+		return Util.formats.getMisses();
 	}
 
 	private boolean add(long id, LogTarget target, LogLevel level) {
 		if (targets.containsKey(id))
 			return false;
 		targets.put(id, target);
+		handler.register(target.getName());
 		Logger logger = Logger.getLogger(target.getName());
 		logger.setLevel(Util.valueOf(level));
 		loggers.add(logger);
@@ -126,12 +302,35 @@ public class SQLLogCurator implements LogCurator {
 	private void remove(Long id) {
 		LogTarget target = targets.remove(id);
 		if (target != null) {
+			handler.unregister(target.getName());
+			handler.removeRateLimit(target.getName());
 			Logger logger = Logger.getLogger(target.getName());
 			if (logger != null)
 				loggers.remove(logger);
 		}
 	}
 
+	/**
+	 * Sets the token bucket rate limit of the loggers of a target
+	 * 
+	 * @param target
+	 *            The target name
+	 * @param rate
+	 *            The number of records per second and logger or null for no
+	 *            limit
+	 * @param burst
+	 *            The maximum number of records at once or null for the rate
+	 */
+	private void setRateLimit(String target, String rate, String burst) {
+		if (rate != null)
+			try {
+				double value = Double.parseDouble(rate);
+				handler.setRateLimit(target, value, burst != null ? Double.parseDouble(burst) : value);
+			} catch (NumberFormatException e) {
+				log.log(Level.WARNING, "Invalid rate limit of log target {0}", target);
+			}
+	}
+
 	public void close() {
 		if (handler != null) {
 			handler.close();
@@ -145,8 +344,10 @@ public class SQLLogCurator implements LogCurator {
 			String level = properties.getProperty(LEVEL);
 
 			if (name != null && label != null) {
-				if (add(id, new LogTarget(name, label), Util.valueOf(level)))
+				if (add(id, new LogTarget(name, label), Util.valueOf(level))) {
 					log.log(Level.FINE, "Added log target {0} alias {1}", new Object[] { name, label });
+					setRateLimit(name, properties.getProperty(RATE), properties.getProperty(BURST));
+				}
 			}
 		} else {
 			remove(id);
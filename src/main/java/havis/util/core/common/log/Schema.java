@@ -0,0 +1,195 @@
+package havis.util.core.common.log;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Versioned database schema of the {@link H2LogStore}. The current version is
+ * stored in the table schema_version, each migration step upgrades the schema
+ * by one version.
+ */
+class Schema {
+
+	private final static Logger log = Logger.getLogger(Schema.class.getName());
+
+	final static String CREATE_VERSION = "CREATE TABLE IF NOT EXISTS schema_version (version INT NOT NULL)";
+	final static String SELECT_VERSION = "SELECT MAX(version) FROM schema_version";
+	final static String INSERT_VERSION = "INSERT INTO schema_version (version) VALUES (%d)";
+	final static String DELETE_VERSION = "DELETE FROM schema_version WHERE version < %d";
+	final static String IS_TABLE = "SELECT COUNT(*) FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_SCHEMA = 'PUBLIC' AND TABLE_NAME = '%s'";
+	final static String IS_VIEW = "SELECT COUNT(*) FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_SCHEMA = 'PUBLIC' AND TABLE_NAME = 'RECORD' AND TABLE_TYPE = 'VIEW'";
+	final static String ADD_TRACE = "ALTER TABLE record ADD COLUMN IF NOT EXISTS trace_id INT";
+
+	/**
+	 * Migration steps, the step at index n upgrades the schema from version n
+	 * to n + 1. The database commits implicitly on each schema change, thus a
+	 * step may be applied partially if interrupted. Each step has to be safe
+	 * to run again on a partially migrated schema, a step either consists of
+	 * schema changes with IF [NOT] EXISTS or of data changes only, which are
+	 * committed together with the version.
+	 */
+	private final static String[][] MIGRATIONS = {
+			// 1: initial schema, also matches databases created before
+			// versioning was introduced
+			{ "CREATE TABLE IF NOT EXISTS record (id SERIAL NOT NULL PRIMARY KEY, millis DATETIME, logger TEXT, class TEXT, method TEXT, level INT, message TEXT, parameters TEXT, thrown TEXT, thread INT)" },
+			// 2: indexable logger column, index for logger prefix and level
+			{ "ALTER TABLE record ALTER COLUMN logger VARCHAR", "CREATE INDEX IF NOT EXISTS record_logger_level ON record (logger, level, id)" },
+			// 3: dictionaries of logger and source names
+			{ "CREATE TABLE IF NOT EXISTS logger_dict (id INT AUTO_INCREMENT PRIMARY KEY, name VARCHAR NOT NULL)",
+					"CREATE UNIQUE INDEX IF NOT EXISTS logger_dict_name ON logger_dict (name)",
+					"CREATE TABLE IF NOT EXISTS source_dict (id INT AUTO_INCREMENT PRIMARY KEY, class VARCHAR, method VARCHAR)",
+					"CREATE INDEX IF NOT EXISTS source_dict_class_method ON source_dict (class, method)",
+					"ALTER TABLE record ADD COLUMN IF NOT EXISTS logger_id INT", "ALTER TABLE record ADD COLUMN IF NOT EXISTS source_id INT" },
+			// 4: logger names of existing records
+			{ "INSERT INTO logger_dict (name) SELECT DISTINCT r.logger FROM record r WHERE r.logger IS NOT NULL AND NOT EXISTS (SELECT 1 FROM logger_dict d WHERE d.name = r.logger)",
+					"UPDATE record r SET logger_id = (SELECT d.id FROM logger_dict d WHERE d.name = r.logger) WHERE r.logger_id IS NULL AND r.logger IS NOT NULL" },
+			// 5: source names of existing records
+			{ "INSERT INTO source_dict (class, method) SELECT DISTINCT CAST(r.class AS VARCHAR), CAST(r.method AS VARCHAR) FROM record r WHERE (r.class IS NOT NULL OR r.method IS NOT NULL) AND NOT EXISTS (SELECT 1 FROM source_dict s WHERE s.class IS NOT DISTINCT FROM CAST(r.class AS VARCHAR) AND s.method IS NOT DISTINCT FROM CAST(r.method AS VARCHAR))",
+					"UPDATE record r SET source_id = (SELECT s.id FROM source_dict s WHERE s.class IS NOT DISTINCT FROM CAST(r.class AS VARCHAR) AND s.method IS NOT DISTINCT FROM CAST(r.method AS VARCHAR)) WHERE r.source_id IS NULL AND (r.class IS NOT NULL OR r.method IS NOT NULL)" },
+			// 6: names only referenced by id
+			{ "DROP INDEX IF EXISTS record_logger_level", "ALTER TABLE record DROP COLUMN IF EXISTS logger", "ALTER TABLE record DROP COLUMN IF EXISTS class",
+					"ALTER TABLE record DROP COLUMN IF EXISTS method", "CREATE INDEX IF NOT EXISTS record_logger_level ON record (logger_id, level, id)" },
+			// 7: binary encoded parameters, the JSON column is kept for
+			// existing rows
+			{ "ALTER TABLE record ADD COLUMN IF NOT EXISTS params VARBINARY" },
+			// 8: search index
+			{ "CREATE TABLE IF NOT EXISTS record_token (token VARCHAR NOT NULL, record_id INT NOT NULL, PRIMARY KEY (token, record_id))",
+					"CREATE INDEX IF NOT EXISTS record_token_record ON record_token (record_id)" },
+			// 9: stack traces stored once
+			{ "CREATE TABLE IF NOT EXISTS trace (id INT NOT NULL PRIMARY KEY, hash BIGINT NOT NULL, thrown TEXT NOT NULL, occurrences BIGINT NOT NULL, last_id BIGINT NOT NULL)",
+					"CREATE INDEX IF NOT EXISTS trace_hash ON trace (hash)", "CREATE INDEX IF NOT EXISTS trace_last_id ON trace (last_id)", ADD_TRACE } };
+
+	/**
+	 * Queries of all records in ascending order per schema version, the query
+	 * at index n reads a schema of version n + 1
+	 */
+	private final static String[] SELECT_ALL = {
+			// names and parameters stored in the record table
+			"SELECT id, millis, logger, class, method, level, message, parameters, NULL AS params, thrown, thread FROM record ORDER BY id ASC",
+			null,
+			null,
+			null,
+			null,
+			// names referenced by id
+			"SELECT r.id, r.millis, l.name AS logger, s.class, s.method, r.level, r.message, r.parameters, NULL AS params, r.thrown, r.thread FROM record r LEFT JOIN logger_dict l ON r.logger_id = l.id LEFT JOIN source_dict s ON r.source_id = s.id ORDER BY r.id ASC",
+			// binary encoded parameters
+			"SELECT r.id, r.millis, l.name AS logger, s.class, s.method, r.level, r.message, r.parameters, r.params, r.thrown, r.thread FROM record r LEFT JOIN logger_dict l ON r.logger_id = l.id LEFT JOIN source_dict s ON r.source_id = s.id ORDER BY r.id ASC",
+			null,
+			// stack traces stored once
+			H2LogStore.COLUMNS + " ORDER BY r.id ASC" };
+
+	/**
+	 * The current schema version
+	 */
+	final static int VERSION = MIGRATIONS.length;
+
+	private Schema() {
+	}
+
+	/**
+	 * Migrates the database schema to the current version. The version is
+	 * recorded after each step. Data changes of a failed step are rolled
+	 * back, but schema changes are committed implicitly by the database and
+	 * remain, thus the step is run again on the next migration.
+	 * 
+	 * @param connection
+	 *            The connection to migrate, must not be in auto commit mode
+	 * @throws SQLException
+	 *             If migration fails
+	 */
+	static void migrate(Connection connection) throws SQLException {
+		migrate(connection, VERSION);
+	}
+
+	/**
+	 * Migrates the database schema up to the given version
+	 * 
+	 * @param connection
+	 *            The connection to migrate, must not be in auto commit mode
+	 * @param target
+	 *            The version to migrate to
+	 * @throws SQLException
+	 *             If migration fails
+	 */
+	static void migrate(Connection connection, int target) throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			statement.execute(CREATE_VERSION);
+			int version = 0;
+			try (ResultSet resultSet = statement.executeQuery(SELECT_VERSION)) {
+				if (resultSet.next())
+					version = resultSet.getInt(1);
+			}
+			for (; version < target; version++) {
+				log.log(Level.FINE, "Migrating log schema to version {0}", version + 1);
+				try {
+					for (String sql : MIGRATIONS[version]) {
+						// the partitions of a record view are altered by
+						// Partitions.load
+						if (ADD_TRACE.equals(sql) && isView(statement))
+							continue;
+						statement.execute(sql);
+					}
+					statement.execute(String.format(INSERT_VERSION, version + 1));
+					statement.execute(String.format(DELETE_VERSION, version + 1));
+					connection.commit();
+				} catch (SQLException e) {
+					connection.rollback();
+					throw e;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the schema version without changing the database. Databases
+	 * created before versioning was introduced have version one.
+	 * 
+	 * @param connection
+	 *            The connection
+	 * @return The schema version or zero if the database has no record table
+	 * @throws SQLException
+	 */
+	static int getVersion(Connection connection) throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			try (ResultSet resultSet = statement.executeQuery(String.format(IS_TABLE, "SCHEMA_VERSION"))) {
+				if (resultSet.next() && resultSet.getInt(1) > 0)
+					try (ResultSet version = statement.executeQuery(SELECT_VERSION)) {
+						if (version.next() && version.getInt(1) > 0)
+							return version.getInt(1);
+					}
+			}
+			try (ResultSet resultSet = statement.executeQuery(String.format(IS_TABLE, "RECORD"))) {
+				return resultSet.next() && resultSet.getInt(1) > 0 ? 1 : 0;
+			}
+		}
+	}
+
+	/**
+	 * Returns the query of all records in ascending order, which matches the
+	 * schema version. Partially migrated schemas are read as of the last
+	 * completed step.
+	 * 
+	 * @param version
+	 *            The schema version
+	 * @return The query
+	 * @throws SQLException
+	 *             If the version is unknown
+	 */
+	static String getSelectAll(int version) throws SQLException {
+		if (version < 1 || version > VERSION)
+			throw new SQLException("Unsupported log schema version " + version);
+		for (int i = version - 1;; i--)
+			if (SELECT_ALL[i] != null)
+				return SELECT_ALL[i];
+	}
+
+	private static boolean isView(Statement statement) throws SQLException {
+		try (ResultSet resultSet = statement.executeQuery(IS_VIEW)) {
+			return resultSet.next() && resultSet.getInt(1) > 0;
+		}
+	}
+}
@@ -0,0 +1,222 @@
+package havis.util.core.common.log;
+
+import havis.util.core.log.LogEntry;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Inverted index of the words of log messages, parameters and exceptions. The
+ * table record_token maps each lower case token to the ids of the records
+ * containing it, thus a search looks up the ids of each term instead of
+ * scanning the record table. Tokens are inserted by the worker thread within
+ * the transaction of the records and removed together with the records.
+ */
+class SearchIndex {
+
+	final static String INSERT = "INSERT INTO record_token (token, record_id) VALUES (?, ?)";
+	final static String TRUNC = "DELETE FROM record_token WHERE record_id < ?";
+	final static String CLEAR = "DELETE FROM record_token WHERE record_id IN (SELECT r.id FROM record r JOIN logger_dict l ON r.logger_id = l.id WHERE l.name >= ? AND l.name < ?)";
+	final static String SEARCH = "SELECT r.id, r.millis, l.name AS logger, s.class, s.method, r.level, r.message, r.parameters, r.params, COALESCE(r.thrown, tr.thrown) AS thrown, r.thread FROM record_token t JOIN record r ON r.id = t.record_id LEFT JOIN logger_dict l ON r.logger_id = l.id LEFT JOIN source_dict s ON r.source_id = s.id LEFT JOIN trace tr ON r.trace_id = tr.id WHERE t.token = ?";
+	final static String TERM = " AND EXISTS (SELECT 1 FROM record_token u WHERE u.token = ? AND u.record_id = t.record_id)";
+	final static String FILTER = " AND l.name >= ? AND l.name < ? AND r.level >= ? AND t.record_id < ? ORDER BY t.record_id DESC LIMIT ?";
+	final static String SCAN = H2LogStore.COLUMNS + " WHERE l.name >= ? AND l.name < ? AND r.level >= ? AND r.id < ?";
+	final static String LIKE = " AND (LOWER(r.message) LIKE ? OR LOWER(COALESCE(r.thrown, tr.thrown)) LIKE ?)";
+	final static String ORDER = " ORDER BY r.id DESC LIMIT ?";
+
+	private final static Pattern PLACEHOLDER = Pattern.compile("\\{\\d+(,[^}]*)?\\}");
+	private final static Pattern FRAME = Pattern.compile("^\\s+(at |\\.\\.\\. )");
+	private final static int MIN_LENGTH = 2;
+	private final static int MAX_LENGTH = 64;
+	private final static int MAX_TOKENS = 100;
+
+	private SearchIndex() {
+	}
+
+	/**
+	 * Adds the tokens of the event to the batch of the insert statement
+	 * 
+	 * @param insert
+	 *            The token insert statement
+	 * @param id
+	 *            The id of the record
+	 * @param event
+	 *            The event
+	 * @throws SQLException
+	 */
+	static void add(PreparedStatement insert, long id, LogEvent event) throws SQLException {
+		for (String token : tokenize(event)) {
+			insert.setString(1, token);
+			insert.setLong(2, id);
+			insert.addBatch();
+		}
+	}
+
+	/**
+	 * Returns the distinct tokens of the message pattern without
+	 * placeholders, of the parameters and of the exception messages. Stack
+	 * frames are not indexed.
+	 * 
+	 * @param event
+	 *            The event
+	 * @return The tokens
+	 */
+	static Set<String> tokenize(LogEvent event) {
+		return tokenize(event.getMessage(), event.getParameters(), event.getThrown());
+	}
+
+	/**
+	 * Returns the distinct tokens of the stored fields of an entry
+	 * 
+	 * @param message
+	 *            The message pattern or null
+	 * @param parameters
+	 *            The binary encoded parameters or null
+	 * @param thrown
+	 *            The exception or null
+	 * @return The tokens
+	 */
+	static Set<String> tokenize(String message, byte[] parameters, String thrown) {
+		Set<String> tokens = new LinkedHashSet<>();
+		if (message != null)
+			tokenize(PLACEHOLDER.matcher(message).replaceAll(" "), tokens);
+		Object[] decoded = ParameterCodec.decode(parameters);
+		if (decoded != null)
+			for (Object parameter : decoded)
+				if (parameter != null)
+					tokenize(parameter.toString(), tokens);
+		if (thrown != null)
+			for (String line : thrown.split("\n"))
+				if (!FRAME.matcher(line).find())
+					tokenize(line, tokens);
+		return tokens;
+	}
+
+	/**
+	 * Splits the text into lower case tokens of letters and digits
+	 * 
+	 * @param text
+	 *            The text
+	 * @param tokens
+	 *            The tokens to add to, up to the maximum number of tokens
+	 */
+	static void tokenize(String text, Set<String> tokens) {
+		int start = -1;
+		for (int i = 0; i <= text.length() && tokens.size() < MAX_TOKENS; i++) {
+			if (i < text.length() && Character.isLetterOrDigit(text.charAt(i))) {
+				if (start < 0)
+					start = i;
+			} else if (start > -1) {
+				if (i - start >= MIN_LENGTH && i - start <= MAX_LENGTH)
+					tokens.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+				start = -1;
+			}
+		}
+	}
+
+	/**
+	 * Deletes the tokens of the records with an id less than the bound
+	 * 
+	 * @param connection
+	 *            The connection
+	 * @param bound
+	 *            The exclusive upper bound of the ids
+	 * @throws SQLException
+	 */
+	static void truncate(Connection connection, long bound) throws SQLException {
+		try (PreparedStatement statement = connection.prepareStatement(TRUNC)) {
+			statement.setLong(1, bound);
+			statement.execute();
+		}
+	}
+
+	/**
+	 * Deletes the tokens of the records of the logger name prefix. Must be
+	 * called before the records are deleted.
+	 * 
+	 * @param connection
+	 *            The connection
+	 * @param logger
+	 *            The logger name prefix
+	 * @throws SQLException
+	 */
+	static void clear(Connection connection, String logger) throws SQLException {
+		try (PreparedStatement statement = connection.prepareStatement(CLEAR)) {
+			H2LogStore.setPrefix(statement, 1, logger);
+			statement.execute();
+		}
+	}
+
+	/**
+	 * Selects the most recent entries containing all words of the query. Uses
+	 * the index if maintained, scans the messages and exceptions for each word
+	 * otherwise.
+	 * 
+	 * @param connection
+	 *            The connection
+	 * @param indexed
+	 *            True if the index is maintained
+	 * @param logger
+	 *            The logger name prefix
+	 * @param level
+	 *            The minimum level
+	 * @param query
+	 *            The words to search for
+	 * @param bound
+	 *            The exclusive upper bound of the ids
+	 * @param limit
+	 *            The maximum number of entries
+	 * @param locale
+	 *            The locale to format the messages with
+	 * @return a list of log entries, the most recent first
+	 * @throws SQLException
+	 */
+	static List<LogEntry> search(Connection connection, boolean indexed, String logger, int level, String query, long bound, int limit, Locale locale)
+			throws SQLException {
+		Set<String> terms = new LinkedHashSet<>();
+		if (query != null)
+			tokenize(query, terms);
+		if (terms.isEmpty() || limit <= 0)
+			return new ArrayList<>();
+		if (!indexed) {
+			StringBuilder sql = new StringBuilder(SCAN);
+			for (int i = 0; i < terms.size(); i++)
+				sql.append(LIKE);
+			sql.append(ORDER);
+			try (PreparedStatement statement = connection.prepareStatement(sql.toString())) {
+				H2LogStore.setPrefix(statement, 1, logger);
+				statement.setInt(3, level);
+				statement.setLong(4, bound);
+				int index = 5;
+				for (String term : terms) {
+					// tokens consist of letters and digits only, thus need no escaping
+					statement.setString(index++, "%" + term + "%");
+					statement.setString(index++, "%" + term + "%");
+				}
+				statement.setInt(index, limit);
+				return H2LogStore.get(statement, locale);
+			}
+		}
+		StringBuilder sql = new StringBuilder(SEARCH);
+		for (int i = 1; i < terms.size(); i++)
+			sql.append(TERM);
+		sql.append(FILTER);
+		try (PreparedStatement statement = connection.prepareStatement(sql.toString())) {
+			int index = 1;
+			for (String term : terms)
+				statement.setString(index++, term);
+			H2LogStore.setPrefix(statement, index, logger);
+			statement.setInt(index + 2, level);
+			statement.setLong(index + 3, bound);
+			statement.setInt(index + 4, limit);
+			return H2LogStore.get(statement, locale);
+		}
+	}
+}
@@ -0,0 +1,374 @@
+package havis.util.core.common.log;
+
+import havis.util.core.log.LogLevel;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Memory mapped, append only segment file of the {@link SegmentLogStore}. The
+ * file starts with a header of magic, version and the first id, followed by
+ * the records. Each record consists of its length and the fields id, millis,
+ * level, thread, logger, class, method, message, binary parameters and thrown.
+ * Strings and binaries are stored with their length, -1 for null. The length
+ * of a record is written after its fields, a zero length marks the end of the
+ * records, thus a partially written record is ignored on recovery.
+ * 
+ * Every {@link #INTERVAL} records the id, the position and the greatest time
+ * of the preceding records are added to a sparse index, which locates records
+ * by id and time without reading the segment from the beginning. Appending is
+ * done by the worker thread of the handler, appended records become visible
+ * to readers on {@link #publish()}.
+ */
+class Segment {
+
+	final static int MAGIC = 0x484c4f47;
+	final static int VERSION = 1;
+	final static int HEADER = 16;
+	final static int INTERVAL = 64;
+	final static String SUFFIX = ".seg";
+
+	/**
+	 * Immutable view of the published records of a segment
+	 */
+	static class View {
+		final ByteBuffer buffer;
+		final int limit;
+		final long firstId;
+		final long lastId;
+		final long minMillis;
+		final long maxMillis;
+		final long[] ids;
+		final int[] positions;
+		final long[] millis;
+		final int size;
+
+		private View(Segment segment) {
+			buffer = segment.buffer.duplicate();
+			limit = segment.limit;
+			firstId = segment.firstId;
+			lastId = segment.lastId;
+			minMillis = segment.minMillis;
+			maxMillis = segment.maxMillis;
+			ids = segment.ids;
+			positions = segment.positions;
+			millis = segment.millis;
+			size = segment.size;
+		}
+
+		/**
+		 * Returns the position of the first record, which may have an id
+		 * greater than the given id and a time not before the given time
+		 * 
+		 * @param after
+		 *            The exclusive lower bound of the ids
+		 * @param from
+		 *            The inclusive lower bound of the time
+		 * @return The position
+		 */
+		int seek(long after, long from) {
+			int block = 0;
+			// last block starting with an id not greater than the next id
+			int low = 0, high = size - 1;
+			while (low <= high) {
+				int middle = (low + high) >>> 1;
+				if (ids[middle] <= after + 1) {
+					block = middle;
+					low = middle + 1;
+				} else {
+					high = middle - 1;
+				}
+			}
+			// first block containing a record not before the time, the
+			// greatest time of the preceding records grows monotonic
+			low = block;
+			high = size - 2;
+			int first = size - 1;
+			while (low <= high) {
+				int middle = (low + high) >>> 1;
+				if (millis[middle + 1] >= from) {
+					first = middle;
+					high = middle - 1;
+				} else {
+					low = middle + 1;
+				}
+			}
+			return size > 0 ? positions[Math.max(block, first)] : limit;
+		}
+
+		/**
+		 * @param block
+		 *            The index of the sparse index entry
+		 * @return The end position of the block
+		 */
+		int end(int block) {
+			return block + 1 < size ? positions[block + 1] : limit;
+		}
+	}
+
+	private final File file;
+	private final MappedByteBuffer buffer;
+	private final ByteBuffer writer;
+	private final long firstId;
+	private final Map<String, long[]> counts = new HashMap<>();
+	private int position = HEADER;
+	private volatile int limit = HEADER;
+	private long lastId;
+	private long minMillis = Long.MAX_VALUE;
+	private long maxMillis = Long.MIN_VALUE;
+	private long[] ids = new long[16];
+	private int[] positions = new int[16];
+	private long[] millis = new long[16];
+	private int size;
+	private int pending;
+	private int count;
+
+	private Segment(File file, MappedByteBuffer buffer, long firstId) {
+		this.file = file;
+		this.buffer = buffer;
+		this.writer = buffer.duplicate();
+		this.firstId = firstId;
+		this.lastId = firstId - 1;
+	}
+
+	/**
+	 * Creates a new segment file
+	 * 
+	 * @param directory
+	 *            The directory
+	 * @param firstId
+	 *            The first id
+	 * @param capacity
+	 *            The size of the file
+	 * @return The segment
+	 * @throws IOException
+	 */
+	static Segment create(File directory, long firstId, int capacity) throws IOException {
+		File file = new File(directory, String.format("%020d", Long.valueOf(firstId)) + SUFFIX);
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(capacity);
+			MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+			buffer.putInt(0, MAGIC);
+			buffer.putInt(4, VERSION);
+			buffer.putLong(8, firstId);
+			return new Segment(file, buffer, firstId);
+		}
+	}
+
+	/**
+	 * Opens an existing segment file and recovers its records. Records are
+	 * read until the end marker, an incomplete record or a non ascending id.
+	 * 
+	 * @param file
+	 *            The segment file
+	 * @param cleared
+	 *            The cleared entries, which are not counted
+	 * @return The segment
+	 * @throws IOException
+	 *             If the file is not a segment
+	 */
+	static Segment open(File file, SegmentLogStore.Cleared cleared) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+			if (buffer.capacity() < HEADER || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+				throw new IOException("Invalid log segment " + file);
+			Segment segment = new Segment(file, buffer, buffer.getLong(8));
+			int position = HEADER;
+			while (position + 4 <= buffer.capacity()) {
+				int length = buffer.getInt(position);
+				if (length <= 0 || position + 4 + length > buffer.capacity() || getId(buffer, position) <= segment.lastId)
+					break;
+				segment.index(position, getId(buffer, position), getMillis(buffer, position));
+				String logger = getLogger(buffer, position);
+				if (!cleared.isCleared(logger, getId(buffer, position)))
+					segment.count(logger, getLevel(buffer, position), 1);
+				position += 4 + length;
+			}
+			segment.position = position;
+			segment.publish();
+			return segment;
+		}
+	}
+
+	/**
+	 * Appends the record, if there is enough space left
+	 * 
+	 * @param record
+	 *            The encoded record without length
+	 * @param length
+	 *            The length of the encoded record
+	 * @param id
+	 *            The id of the record
+	 * @param time
+	 *            The time of the record
+	 * @return True if appended, false if the segment is full
+	 */
+	boolean append(byte[] record, int length, long id, long time) {
+		if (position + 4 + length > writer.capacity())
+			return false;
+		writer.position(position + 4);
+		writer.put(record, 0, length);
+		// the length completes the record
+		writer.putInt(position, length);
+		index(position, id, time);
+		position += 4 + length;
+		return true;
+	}
+
+	private void index(int position, long id, long time) {
+		if (count % INTERVAL == 0) {
+			if (pending == ids.length) {
+				// readers keep the previous arrays
+				ids = Arrays.copyOf(ids, pending * 2);
+				positions = Arrays.copyOf(positions, pending * 2);
+				millis = Arrays.copyOf(millis, pending * 2);
+			}
+			ids[pending] = id;
+			positions[pending] = position;
+			millis[pending] = maxMillis;
+			pending++;
+		}
+		count++;
+		lastId = id;
+		minMillis = Math.min(minMillis, time);
+		maxMillis = Math.max(maxMillis, time);
+	}
+
+	/**
+	 * Makes the appended records visible to readers, callers must hold the
+	 * lock of the store
+	 */
+	void publish() {
+		size = pending;
+		limit = position;
+	}
+
+	/**
+	 * Adds to the number of entries of the logger and level, callers must hold
+	 * the lock of the store
+	 */
+	void count(String logger, int level, long count) {
+		long[] levels = counts.get(logger);
+		if (levels == null)
+			counts.put(logger, levels = new long[LogLevel.values().length]);
+		int index = Util.valueOf(level).ordinal();
+		levels[index] = Math.max(0, levels[index] + count);
+	}
+
+	/**
+	 * @return The number of entries per logger and level index, callers must
+	 *         hold the lock of the store
+	 */
+	Map<String, long[]> getCounts() {
+		return counts;
+	}
+
+	/**
+	 * @return The view of the published records, callers must hold the lock
+	 *         of the store
+	 */
+	View view() {
+		return new View(this);
+	}
+
+	/**
+	 * Writes the modified content to the storage device
+	 */
+	void force() {
+		buffer.force();
+	}
+
+	/**
+	 * Deletes the segment file. The mapping remains valid for current readers.
+	 */
+	void delete() {
+		file.delete();
+	}
+
+	long getFirstId() {
+		return firstId;
+	}
+
+	long getLastId() {
+		return lastId;
+	}
+
+	long getMaxMillis() {
+		return maxMillis;
+	}
+
+	/**
+	 * @return The number of appended records
+	 */
+	int getCount() {
+		return count;
+	}
+
+	static int getLength(ByteBuffer buffer, int position) {
+		return buffer.getInt(position);
+	}
+
+	static long getId(ByteBuffer buffer, int position) {
+		return buffer.getLong(position + 4);
+	}
+
+	static long getMillis(ByteBuffer buffer, int position) {
+		return buffer.getLong(position + 12);
+	}
+
+	static int getLevel(ByteBuffer buffer, int position) {
+		return buffer.getInt(position + 20);
+	}
+
+	static int getThread(ByteBuffer buffer, int position) {
+		return buffer.getInt(position + 24);
+	}
+
+	static String getLogger(ByteBuffer buffer, int position) {
+		return new Reader(buffer, position).getString();
+	}
+
+	/**
+	 * Sequential reader of the variable length fields of a record
+	 */
+	static class Reader {
+		private final ByteBuffer buffer;
+		private int position;
+
+		/**
+		 * @param buffer
+		 *            The segment buffer
+		 * @param position
+		 *            The position of the record
+		 */
+		Reader(ByteBuffer buffer, int position) {
+			this.buffer = buffer;
+			this.position = position + 28;
+		}
+
+		byte[] getBytes() {
+			int length = buffer.getInt(position);
+			position += 4;
+			if (length < 0)
+				return null;
+			byte[] bytes = new byte[length];
+			for (int i = 0; i < length; i++)
+				bytes[i] = buffer.get(position + i);
+			position += length;
+			return bytes;
+		}
+
+		String getString() {
+			byte[] bytes = getBytes();
+			return bytes != null ? new String(bytes, StandardCharsets.UTF_8) : null;
+		}
+	}
+}
@@ -0,0 +1,672 @@
+package havis.util.core.common.log;
+
+import havis.util.core.log.LogEntry;
+import havis.util.core.log.LogLevel;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Log store of append only, memory mapped {@link Segment} files. Appending
+ * copies the encoded record into the mapping of the current segment, a new
+ * segment is started when the current one is full. Retention deletes whole
+ * segments, either if the remaining segments still hold the maximum number of
+ * entries or if all entries of the oldest segment expired. Cleared entries are
+ * hidden by persisted tombstones until their segments are deleted.
+ * 
+ * Queries locate the first record by the sparse index of each segment and read
+ * the records directly from the mappings. The number of entries per logger
+ * and level is maintained per segment, thus the size of a logger is answered
+ * without reading records.
+ */
+class SegmentLogStore implements LogStore {
+
+	private final static Logger log = Logger.getLogger(SegmentLogStore.class.getName());
+
+	private final static String CLEARED = "cleared";
+
+	private final static LogLevel[] LEVELS = LogLevel.values();
+
+	/**
+	 * Persisted tombstones of cleared entries. A tombstone hides the entries
+	 * of a logger name prefix up to the last id at the time of clearing.
+	 */
+	static class Cleared {
+
+		private static class Tombstone {
+			final String prefix;
+			final String upper;
+			final long id;
+
+			Tombstone(String prefix, long id) {
+				this.prefix = prefix;
+				this.upper = Util.upperBound(prefix);
+				this.id = id;
+			}
+		}
+
+		private final File file;
+		private volatile List<Tombstone> tombstones;
+
+		private Cleared(File file, List<Tombstone> tombstones) {
+			this.file = file;
+			this.tombstones = tombstones;
+		}
+
+		/**
+		 * Loads the tombstones
+		 * 
+		 * @param file
+		 *            The file of the tombstones
+		 * @return The tombstones
+		 * @throws IOException
+		 */
+		static Cleared load(File file) throws IOException {
+			List<Tombstone> tombstones = new ArrayList<>();
+			if (file.exists())
+				for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+					int index = line.indexOf('\t');
+					if (index > 0)
+						try {
+							tombstones.add(new Tombstone(line.substring(index + 1), Long.parseLong(line.substring(0, index))));
+						} catch (NumberFormatException e) {
+							log.log(Level.WARNING, "Ignoring invalid tombstone {0}", line);
+						}
+				}
+			return new Cleared(file, tombstones);
+		}
+
+		/**
+		 * @param logger
+		 *            The logger name
+		 * @param id
+		 *            The id of the entry
+		 * @return True if the entry is cleared
+		 */
+		boolean isCleared(String logger, long id) {
+			List<Tombstone> tombstones = this.tombstones;
+			if (!tombstones.isEmpty()) {
+				if (logger == null)
+					logger = "";
+				for (Tombstone tombstone : tombstones)
+					if (id <= tombstone.id && logger.compareTo(tombstone.prefix) >= 0 && logger.compareTo(tombstone.upper) < 0)
+						return true;
+			}
+			return false;
+		}
+
+		/**
+		 * Adds a tombstone
+		 * 
+		 * @param prefix
+		 *            The logger name prefix
+		 * @param id
+		 *            The inclusive upper bound of the cleared ids
+		 * @throws IOException
+		 */
+		void add(String prefix, long id) throws IOException {
+			List<Tombstone> tombstones = new ArrayList<>(this.tombstones);
+			tombstones.add(new Tombstone(prefix, id));
+			write(tombstones);
+		}
+
+		/**
+		 * Removes the tombstones of deleted entries
+		 * 
+		 * @param first
+		 *            The first id of the remaining entries
+		 * @throws IOException
+		 */
+		void prune(long first) throws IOException {
+			List<Tombstone> tombstones = new ArrayList<>();
+			for (Tombstone tombstone : this.tombstones)
+				if (tombstone.id >= first)
+					tombstones.add(tombstone);
+			if (tombstones.size() < this.tombstones.size())
+				write(tombstones);
+		}
+
+		private void write(List<Tombstone> tombstones) throws IOException {
+			List<String> lines = new ArrayList<>();
+			for (Tombstone tombstone : tombstones)
+				lines.add(tombstone.id + "\t" + tombstone.prefix);
+			File temp = new File(file.getPath() + ".tmp");
+			Files.write(temp.toPath(), lines, StandardCharsets.UTF_8);
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			this.tombstones = tombstones;
+		}
+	}
+
+	/**
+	 * Selection of records
+	 */
+	private static class Filter {
+		final String prefix;
+		final String upper;
+		final int level;
+		final long from;
+		final long to;
+		final long after;
+		final Cleared cleared;
+
+		Filter(String prefix, int level, long from, long to, long after, Cleared cleared) {
+			this.prefix = prefix != null ? prefix : "";
+			this.upper = Util.upperBound(this.prefix);
+			this.level = level;
+			this.from = from;
+			this.to = to;
+			this.after = after;
+			this.cleared = cleared;
+		}
+
+		/**
+		 * @param view
+		 *            The segment
+		 * @return True if the segment may contain selected records
+		 */
+		boolean overlaps(Segment.View view) {
+			return view.limit > Segment.HEADER && view.lastId > after && view.maxMillis >= from && view.minMillis < to;
+		}
+
+		/**
+		 * @param buffer
+		 *            The segment buffer
+		 * @param position
+		 *            The position of the record
+		 * @return True if the record is selected
+		 */
+		boolean matches(ByteBuffer buffer, int position) {
+			long id = Segment.getId(buffer, position);
+			long millis = Segment.getMillis(buffer, position);
+			if (id <= after || millis < from || millis >= to || Segment.getLevel(buffer, position) < level)
+				return false;
+			String logger = Segment.getLogger(buffer, position);
+			if (logger == null)
+				logger = "";
+			return logger.compareTo(prefix) >= 0 && logger.compareTo(upper) < 0 && !cleared.isCleared(logger, id);
+		}
+	}
+
+	/**
+	 * Iterator over the selected records in ascending order, reading the
+	 * segments while iterating
+	 */
+	private static class Scan implements Iterator<LogEntry> {
+		private final Iterator<Segment.View> views;
+		private final Filter filter;
+		private final Locale locale;
+		private Segment.View view;
+		private int position;
+		private LogEntry next;
+
+		Scan(List<Segment.View> views, Filter filter, Locale locale) {
+			this.views = views.iterator();
+			this.filter = filter;
+			this.locale = locale;
+		}
+
+		@Override
+		public boolean hasNext() {
+			while (next == null) {
+				if (view == null || position >= view.limit) {
+					view = null;
+					while (view == null && views.hasNext()) {
+						Segment.View candidate = views.next();
+						if (filter.overlaps(candidate))
+							view = candidate;
+					}
+					if (view == null)
+						return false;
+					position = view.seek(filter.after, filter.from);
+				}
+				if (filter.matches(view.buffer, position))
+					next = entry(view.buffer, position, locale);
+				position += 4 + Segment.getLength(view.buffer, position);
+			}
+			return true;
+		}
+
+		@Override
+		public LogEntry next() {
+			if (!hasNext())
+				throw new NoSuchElementException();
+			LogEntry entry = next;
+			next = null;
+			return entry;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	private final File directory;
+	private final int segmentSize;
+	private final int maxEntries;
+	private final long age;
+	private final Durability durability;
+	private final int writeDelay;
+	private final int groupInterval;
+	private final int groupCount;
+	private final CommitStatistics statistics;
+
+	private final List<Segment> segments = new ArrayList<>();
+	private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	private final DataOutputStream out = new DataOutputStream(bytes);
+	private volatile Cleared cleared;
+	private Segment current;
+	private long id;
+	private long forced;
+	private long unforced;
+	private int unforcedCount;
+
+	/**
+	 * Creates a new segment store
+	 * 
+	 * @param directory
+	 *            The directory of the segment files
+	 * @param segmentSize
+	 *            The size of a segment file in bytes
+	 * @param maxEntries
+	 *            The number of entries to keep at least
+	 * @param age
+	 *            The retention age in milliseconds, 0 to keep entries
+	 *            regardless of age
+	 * @param durability
+	 *            The durability mode
+	 * @param writeDelay
+	 *            The maximum delay of writes in async mode in milliseconds
+	 * @param groupInterval
+	 *            The maximum age of unwritten records in group mode in
+	 *            milliseconds
+	 * @param groupCount
+	 *            The maximum number of unwritten records in group mode
+	 * @param statistics
+	 *            The statistics to record the writes to
+	 */
+	SegmentLogStore(File directory, int segmentSize, int maxEntries, long age, Durability durability, int writeDelay, int groupInterval, int groupCount,
+			CommitStatistics statistics) {
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		this.maxEntries = maxEntries;
+		this.age = age;
+		this.durability = durability;
+		this.writeDelay = writeDelay;
+		this.groupInterval = groupInterval;
+		this.groupCount = groupCount;
+		this.statistics = statistics;
+	}
+
+	@Override
+	public void open() throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs())
+			throw new IOException("Failed to create log directory " + directory);
+		Cleared cleared = Cleared.load(new File(directory, CLEARED));
+		File[] files = directory.listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.endsWith(Segment.SUFFIX);
+			}
+		});
+		// names are zero padded first ids
+		Arrays.sort(files);
+		List<Segment> segments = new ArrayList<>();
+		for (File file : files) {
+			try {
+				Segment segment = Segment.open(file, cleared);
+				if (segments.isEmpty() || segment.getFirstId() > segments.get(segments.size() - 1).getLastId())
+					segments.add(segment);
+				else
+					log.log(Level.WARNING, "Ignoring overlapping log segment {0}", file);
+			} catch (IOException e) {
+				// header not written completely
+				log.log(Level.WARNING, "Deleting invalid log segment " + file, e);
+				file.delete();
+			}
+		}
+		synchronized (this) {
+			this.cleared = cleared;
+			this.segments.clear();
+			this.segments.addAll(segments);
+			current = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+			id = current != null ? current.getLastId() : 0;
+		}
+		forced = System.currentTimeMillis();
+	}
+
+	/**
+	 * Wakes up once the write delay or the group interval elapsed to write
+	 * pending changes, waits without timeout if nothing is pending.
+	 */
+	@Override
+	public long getTimeout() {
+		if (unforced == 0)
+			return -1;
+		return Math.max(0, (durability == Durability.GROUP ? unforced + groupInterval : forced + writeDelay) - System.currentTimeMillis());
+	}
+
+	/**
+	 * Appends the events. Writes the mapping to the storage device after each
+	 * record, after a group of records or at most once per write delay
+	 * according to the durability mode. Called with an empty list to write
+	 * pending changes in group and async mode.
+	 */
+	@Override
+	public void append(List<LogEvent> events) throws IOException {
+		int from = 0;
+		for (int i = 0; i < events.size(); i++) {
+			LogEvent event = events.get(i);
+			byte[] record = encode(id + 1, event);
+			if (current == null || !current.append(record, record.length, id + 1, event.getMillis())) {
+				if (current != null) {
+					publish(events.subList(from, i));
+					from = i;
+					force();
+				}
+				Segment segment = Segment.create(directory, id + 1, Math.max(segmentSize, Segment.HEADER + 4 + record.length));
+				synchronized (this) {
+					segments.add(segment);
+				}
+				current = segment;
+				current.append(record, record.length, id + 1, event.getMillis());
+			}
+			id++;
+			unforcedCount++;
+			if (unforced == 0)
+				unforced = event.getMillis();
+			if (durability == Durability.RECORD) {
+				publish(events.subList(from, i + 1));
+				from = i + 1;
+				force();
+			}
+		}
+		publish(events.subList(from, events.size()));
+		long now = System.currentTimeMillis();
+		if (unforced != 0
+				&& (durability == Durability.GROUP ? unforcedCount >= groupCount || now - unforced >= groupInterval : now - forced >= writeDelay))
+			force();
+		retain();
+	}
+
+	/**
+	 * Writes the current segment to the storage device, the appended entries
+	 * are readable already
+	 */
+	@Override
+	public void flush() throws IOException {
+		force();
+	}
+
+	private byte[] encode(long id, LogEvent event) throws IOException {
+		bytes.reset();
+		out.writeLong(id);
+		out.writeLong(event.getMillis());
+		out.writeInt(event.getLevel());
+		out.writeInt(event.getThread());
+		write(event.getLogger());
+		write(event.getSourceClass());
+		write(event.getSourceMethod());
+		write(event.getMessage());
+		write(event.getParameters());
+		write(event.getThrown());
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	private void write(String value) throws IOException {
+		write(value != null ? value.getBytes(StandardCharsets.UTF_8) : null);
+	}
+
+	private void write(byte[] value) throws IOException {
+		if (value == null) {
+			out.writeInt(-1);
+		} else {
+			out.writeInt(value.length);
+			out.write(value);
+		}
+	}
+
+	/**
+	 * Makes the appended records visible and counts them
+	 */
+	private synchronized void publish(List<LogEvent> events) {
+		if (current != null) {
+			current.publish();
+			for (LogEvent event : events)
+				current.count(event.getLogger(), event.getLevel(), 1);
+		}
+	}
+
+	/**
+	 * Writes the current segment to the storage device and records the
+	 * latency and the loss window
+	 */
+	private void force() {
+		if (current != null && unforced != 0) {
+			long begin = System.nanoTime();
+			current.force();
+			forced = System.currentTimeMillis();
+			statistics.add(System.nanoTime() - begin, forced - unforced);
+			unforced = 0;
+			unforcedCount = 0;
+		}
+	}
+
+	/**
+	 * Deletes the oldest segments, which are not needed to keep the maximum
+	 * number of entries or expired completely
+	 */
+	private void retain() throws IOException {
+		long expired = age > 0 ? System.currentTimeMillis() - age : Long.MIN_VALUE;
+		List<Segment> deleted = new ArrayList<>();
+		long first;
+		synchronized (this) {
+			if (segments.isEmpty())
+				return;
+			while (segments.size() > 1
+					&& (id - segments.get(1).getFirstId() + 1 >= maxEntries || segments.get(0).getMaxMillis() < expired))
+				deleted.add(segments.remove(0));
+			first = segments.get(0).getFirstId();
+		}
+		if (!deleted.isEmpty()) {
+			for (Segment segment : deleted)
+				segment.delete();
+			cleared.prune(first);
+		}
+	}
+
+	/**
+	 * @return The views of all segments, callers must hold the lock
+	 */
+	private List<Segment.View> views() {
+		List<Segment.View> views = new ArrayList<>(segments.size());
+		for (Segment segment : segments)
+			views.add(segment.view());
+		return views;
+	}
+
+	/**
+	 * Does nothing, segments count the entries of all loggers
+	 */
+	@Override
+	public void register(String target) {
+	}
+
+	/**
+	 * Does nothing
+	 */
+	@Override
+	public void unregister(String target) {
+	}
+
+	@Override
+	public synchronized int size(String logger, int level) {
+		if (logger == null)
+			logger = "";
+		long size = 0;
+		for (Segment segment : segments)
+			for (Entry<String, long[]> entry : segment.getCounts().entrySet())
+				if ((entry.getKey() != null ? entry.getKey() : "").startsWith(logger))
+					for (int i = 0; i < LEVELS.length; i++)
+						if (Util.toInt(LEVELS[i]) >= level)
+							size += entry.getValue()[i];
+		return (int) Math.min(size, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public int size(String logger, int level, long from, long to) {
+		List<Segment.View> views;
+		synchronized (this) {
+			views = views();
+		}
+		Filter filter = new Filter(logger, level, from, to, 0, cleared);
+		int size = 0;
+		for (Segment.View view : views)
+			if (filter.overlaps(view))
+				for (int position = view.seek(0, from); position < view.limit; position += 4 + Segment.getLength(view.buffer, position))
+					if (filter.matches(view.buffer, position))
+						size++;
+		return size;
+	}
+
+	@Override
+	public List<LogEntry> get(String logger, int level, long from, long to, long after, int limit, int offset, Locale locale) {
+		List<Segment.View> views;
+		synchronized (this) {
+			views = views();
+		}
+		List<LogEntry> entries = new ArrayList<>();
+		Scan scan = new Scan(views, new Filter(logger, level, from, to, after, cleared), locale);
+		for (int i = 0; i < offset && scan.hasNext(); i++)
+			scan.next();
+		while (entries.size() < limit && scan.hasNext())
+			entries.add(scan.next());
+		return entries;
+	}
+
+	@Override
+	public LogCursor cursor(String logger, int level, Locale locale) {
+		List<Segment.View> views;
+		synchronized (this) {
+			views = views();
+		}
+		return new LogCursor(new Scan(views, new Filter(logger, level, Long.MIN_VALUE, Long.MAX_VALUE, 0, cleared), locale));
+	}
+
+	/**
+	 * Reads the segments backwards block by block of the sparse index and
+	 * matches the tokens of each selected record against the query
+	 */
+	@Override
+	public List<LogEntry> search(String logger, int level, String query, int limit, Locale locale) {
+		Set<String> terms = new LinkedHashSet<>();
+		if (query != null)
+			SearchIndex.tokenize(query, terms);
+		List<LogEntry> entries = new ArrayList<>();
+		if (terms.isEmpty() || limit <= 0)
+			return entries;
+		List<Segment.View> views;
+		synchronized (this) {
+			views = views();
+		}
+		Filter filter = new Filter(logger, level, Long.MIN_VALUE, Long.MAX_VALUE, 0, cleared);
+		List<Integer> positions = new ArrayList<>();
+		for (int v = views.size() - 1; v >= 0 && entries.size() < limit; v--) {
+			Segment.View view = views.get(v);
+			if (!filter.overlaps(view))
+				continue;
+			for (int block = view.size - 1; block >= 0 && entries.size() < limit; block--) {
+				positions.clear();
+				for (int position = view.positions[block]; position < view.end(block); position += 4 + Segment.getLength(view.buffer, position))
+					if (filter.matches(view.buffer, position))
+						positions.add(Integer.valueOf(position));
+				for (int i = positions.size() - 1; i >= 0 && entries.size() < limit; i--) {
+					Segment.Reader reader = new Segment.Reader(view.buffer, positions.get(i).intValue());
+					reader.getString();
+					reader.getString();
+					reader.getString();
+					String message = reader.getString();
+					byte[] parameters = reader.getBytes();
+					if (SearchIndex.tokenize(message, parameters, reader.getString()).containsAll(terms))
+						entries.add(entry(view.buffer, positions.get(i).intValue(), locale));
+				}
+			}
+		}
+		return entries;
+	}
+
+	/**
+	 * Hides the entries by a tombstone and subtracts them from the counters
+	 * of their segments
+	 */
+	@Override
+	public synchronized int clear(String logger) throws IOException {
+		Filter filter = new Filter(logger, Integer.MIN_VALUE, Long.MIN_VALUE, Long.MAX_VALUE, 0, cleared);
+		int count = 0;
+		long last = 0;
+		for (Segment segment : segments) {
+			Segment.View view = segment.view();
+			for (int position = Segment.HEADER; position < view.limit; position += 4 + Segment.getLength(view.buffer, position)) {
+				if (filter.matches(view.buffer, position)) {
+					segment.count(Segment.getLogger(view.buffer, position), Segment.getLevel(view.buffer, position), -1);
+					count++;
+				}
+			}
+			last = Math.max(last, view.lastId);
+		}
+		if (count > 0)
+			cleared.add(filter.prefix, last);
+		return count;
+	}
+
+	@Override
+	public void close() throws IOException {
+		force();
+		synchronized (this) {
+			segments.clear();
+			current = null;
+		}
+	}
+
+	/**
+	 * Reads the log entry of a record
+	 * 
+	 * @param buffer
+	 *            The segment buffer
+	 * @param position
+	 *            The position of the record
+	 * @param locale
+	 *            The locale to format the message with
+	 * @return The log entry
+	 */
+	private static LogEntry entry(ByteBuffer buffer, int position, Locale locale) {
+		Segment.Reader reader = new Segment.Reader(buffer, position);
+		String logger = reader.getString();
+		String clazz = reader.getString();
+		String method = reader.getString();
+		String message = reader.getString();
+		byte[] parameters = reader.getBytes();
+		String thrown = reader.getString();
+		return SQLHandler.entry(Segment.getId(buffer, position), Segment.getMillis(buffer, position), logger, clazz, method,
+				Segment.getLevel(buffer, position), message, null, parameters, thrown, Segment.getThread(buffer, position), locale);
+	}
+}
@@ -0,0 +1,128 @@
+package havis.util.core.common.log;
+
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.LogRecord;
+
+/**
+ * Suppresses repeated log records of the same logger and message pattern. The
+ * first record of a logger and message pattern is passed and opens a window,
+ * further records within the window are counted instead. When the window
+ * closes, a single entry with the number of repetitions is emitted, which
+ * carries the message formatted with the parameters, the exception and the
+ * time of the last repetition. The last repetition is kept as snapshot, thus
+ * neither the record nor its parameters are retained for the window. Records
+ * are accepted by any publishing thread, the entries of closed windows
+ * are collected by the worker thread of the {@link SQLHandler}.
+ */
+class Suppressor {
+
+	/**
+	 * The maximum number of tracked logger and message pattern pairs, further
+	 * pairs are passed without suppression
+	 */
+	private final static int MAX_REPEATS = 1024;
+
+	private static class Repeat {
+		final long until;
+		LogEvent last;
+		int count;
+		boolean closed;
+
+		Repeat(long until) {
+			this.until = until;
+		}
+	}
+
+	private final ConcurrentMap<String, Repeat> repeats = new ConcurrentHashMap<>();
+	private final Queue<LogEvent> summaries = new ConcurrentLinkedQueue<>();
+	private final long window;
+
+	/**
+	 * Creates a new suppressor
+	 * 
+	 * @param window
+	 *            The suppression window in milliseconds
+	 */
+	Suppressor(long window) {
+		this.window = window;
+	}
+
+	/**
+	 * @return The suppression window in milliseconds
+	 */
+	long getWindow() {
+		return window;
+	}
+
+	/**
+	 * Accepts or suppresses the log record
+	 * 
+	 * @param record
+	 *            The log record
+	 * @return True if the record has to be published, false if it was
+	 *         counted as a repetition
+	 */
+	boolean accept(LogRecord record) {
+		String key = record.getLoggerName() + '\u0000' + record.getMessage();
+		long now = record.getMillis();
+		Repeat repeat = repeats.get(key);
+		if (repeat != null) {
+			// the stack trace is rendered, the throwable is not retained
+			LogEvent last = now < repeat.until ? new LogEvent(record, false) : null;
+			synchronized (repeat) {
+				if (!repeat.closed && last != null) {
+					repeat.last = last;
+					repeat.count++;
+					return false;
+				}
+				close(repeat);
+			}
+			repeats.remove(key, repeat);
+		}
+		if (repeats.size() < MAX_REPEATS)
+			repeats.putIfAbsent(key, new Repeat(now + window));
+		return true;
+	}
+
+	/**
+	 * Closes the expired windows and adds the entries of all closed windows
+	 * with repetitions to the events
+	 * 
+	 * @param now
+	 *            The current time in milliseconds
+	 * @param events
+	 *            The events to add to
+	 */
+	void expire(long now, List<LogEvent> events) {
+		for (Entry<String, Repeat> entry : repeats.entrySet()) {
+			Repeat repeat = entry.getValue();
+			if (repeat.until <= now) {
+				synchronized (repeat) {
+					close(repeat);
+				}
+				repeats.remove(entry.getKey(), repeat);
+			}
+		}
+		LogEvent summary;
+		while ((summary = summaries.poll()) != null)
+			events.add(summary);
+	}
+
+	/**
+	 * Closes the window and queues its summary entry, callers must hold the
+	 * lock of the repeat
+	 */
+	private void close(Repeat repeat) {
+		if (!repeat.closed) {
+			repeat.closed = true;
+			if (repeat.count > 0)
+				summaries.add(new LogEvent(repeat.last, " (repeated " + repeat.count + " times)"));
+			repeat.last = null;
+		}
+	}
+}
@@ -0,0 +1,189 @@
+package havis.util.core.common.log;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Store of distinct stack traces. Rows of the record table reference the
+ * stack trace in the table trace by id instead of repeating the text, the
+ * trace is joined back when entries are read. Each trace counts its
+ * occurrences and keeps the greatest id of the referencing records, thus
+ * traces are deleted together with their last record. Traces are looked up by
+ * hash, recently used hashes are cached. Must only be used by the worker
+ * thread of the {@link SQLHandler}.
+ */
+class Traces {
+
+	final static String SELECT_MAX = "SELECT MAX(id) FROM trace";
+	final static String SELECT = "SELECT id, thrown FROM trace WHERE hash = ?";
+	final static String INSERT = "INSERT INTO trace (id, hash, thrown, occurrences, last_id) VALUES (?, ?, ?, 0, 0)";
+	final static String UPDATE = "UPDATE trace SET occurrences = occurrences + ?, last_id = ? WHERE id = ?";
+	final static String TRUNC = "DELETE FROM trace WHERE last_id < ?";
+
+	private final static int CAPACITY = 256;
+
+	private static class Trace {
+		final int id;
+		long lastId;
+
+		Trace(int id) {
+			this.id = id;
+		}
+	}
+
+	private final Map<Long, Trace> cache = new LinkedHashMap<Long, Trace>(CAPACITY, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Entry<Long, Trace> eldest) {
+			return size() > CAPACITY;
+		}
+	};
+
+	/**
+	 * Occurrences and greatest record id per trace id of the current
+	 * transaction
+	 */
+	private final Map<Integer, long[]> pending = new LinkedHashMap<>();
+	private int traceId;
+
+	/**
+	 * Discards the cached and pending traces and loads the greatest id
+	 * 
+	 * @param connection
+	 *            The connection to load from
+	 * @throws SQLException
+	 */
+	void load(Connection connection) throws SQLException {
+		cache.clear();
+		pending.clear();
+		try (Statement statement = connection.createStatement()) {
+			try (ResultSet resultSet = statement.executeQuery(SELECT_MAX)) {
+				traceId = resultSet.next() ? resultSet.getInt(1) : 0;
+			}
+		}
+	}
+
+	/**
+	 * Returns the id of the stack trace, inserts the trace if unknown and
+	 * counts the occurrence
+	 * 
+	 * @param connection
+	 *            The connection of the current transaction
+	 * @param thrown
+	 *            The stack trace
+	 * @param record
+	 *            The id of the referencing record
+	 * @return The id or null if the trace is null or has to be stored with the
+	 *         record due to a hash collision
+	 * @throws SQLException
+	 */
+	Integer getTrace(Connection connection, String thrown, long record) throws SQLException {
+		if (thrown == null)
+			return null;
+		Long hash = Long.valueOf(hash(thrown));
+		Trace trace = cache.get(hash);
+		if (trace == null) {
+			try (PreparedStatement statement = connection.prepareStatement(SELECT)) {
+				statement.setLong(1, hash.longValue());
+				try (ResultSet resultSet = statement.executeQuery()) {
+					if (resultSet.next()) {
+						if (!thrown.equals(resultSet.getString(2)))
+							return null;
+						trace = new Trace(resultSet.getInt(1));
+					}
+				}
+			}
+			if (trace == null) {
+				trace = new Trace(traceId + 1);
+				try (PreparedStatement statement = connection.prepareStatement(INSERT)) {
+					statement.setInt(1, trace.id);
+					statement.setLong(2, hash.longValue());
+					statement.setString(3, thrown);
+					statement.execute();
+				}
+				traceId = trace.id;
+			}
+			cache.put(hash, trace);
+		}
+		trace.lastId = Math.max(trace.lastId, record);
+		Integer id = Integer.valueOf(trace.id);
+		long[] occurrences = pending.get(id);
+		if (occurrences == null)
+			pending.put(id, occurrences = new long[2]);
+		occurrences[0]++;
+		occurrences[1] = Math.max(occurrences[1], record);
+		return id;
+	}
+
+	/**
+	 * Writes the occurrences of the current transaction, must be called
+	 * before commit
+	 * 
+	 * @param connection
+	 *            The connection of the current transaction
+	 * @throws SQLException
+	 */
+	void flush(Connection connection) throws SQLException {
+		if (pending.isEmpty())
+			return;
+		try (PreparedStatement statement = connection.prepareStatement(UPDATE)) {
+			for (Entry<Integer, long[]> entry : pending.entrySet()) {
+				statement.setLong(1, entry.getValue()[0]);
+				statement.setLong(2, entry.getValue()[1]);
+				statement.setInt(3, entry.getKey().intValue());
+				statement.addBatch();
+			}
+			statement.executeBatch();
+		}
+		pending.clear();
+	}
+
+	/**
+	 * Deletes the traces, which are only referenced by records with an id
+	 * less than the bound
+	 * 
+	 * @param connection
+	 *            The connection
+	 * @param bound
+	 *            The exclusive upper bound of the deleted record ids
+	 * @throws SQLException
+	 */
+	void truncate(Connection connection, long bound) throws SQLException {
+		for (Iterator<Trace> iterator = cache.values().iterator(); iterator.hasNext();)
+			if (iterator.next().lastId < bound)
+				iterator.remove();
+		try (PreparedStatement statement = connection.prepareStatement(TRUNC)) {
+			statement.setLong(1, bound);
+			statement.execute();
+		}
+	}
+
+	/**
+	 * @param thrown
+	 *            The stack trace
+	 * @return The first eight bytes of the SHA-1 digest of the trace
+	 */
+	static long hash(String thrown) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(thrown.getBytes(StandardCharsets.UTF_8));
+			long hash = 0;
+			for (int i = 0; i < 8; i++)
+				hash = hash << 8 | digest[i] & 0xff;
+			return hash;
+		} catch (NoSuchAlgorithmException e) {
+			// SHA-1 is supported by every Java platform
+			throw new IllegalStateException(e);
+		}
+	}
+}
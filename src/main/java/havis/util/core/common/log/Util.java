@@ -1,10 +1,10 @@
 package havis.util.core.common.log;
 
+import havis.util.core.common.Environment;
 import havis.util.core.log.LogLevel;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
-import java.text.MessageFormat;
 import java.util.List;
 import java.util.Locale;
 import java.util.logging.Level;
@@ -19,6 +19,10 @@ public class Util {
 
 	private final static ObjectMapper mapper = new ObjectMapper().enableDefaultTyping(ObjectMapper.DefaultTyping.NON_FINAL);
 
+	private final static ObjectMapper untypedMapper = new ObjectMapper();
+
+	final static FormatCache formats = new FormatCache(Math.max(1, Environment.LOG_FORMAT_CACHE.intValue()));
+
 	static LogLevel valueOf(Level level) {
 		if (level != null) {
 			return valueOf(level.intValue());
@@ -82,11 +86,28 @@ public class Util {
 		return valueOf(level).intValue();
 	}
 
+	/**
+	 * Returns the smallest string greater than all strings starting with the
+	 * prefix, i.e. the exclusive upper bound of a prefix range match
+	 * 
+	 * @param prefix
+	 *            The prefix
+	 * @return The upper bound
+	 */
+	static String upperBound(String prefix) {
+		for (int i = prefix.length() - 1; i >= 0; i--) {
+			char c = prefix.charAt(i);
+			if (c < Character.MAX_VALUE)
+				return prefix.substring(0, i) + (char) (c + 1);
+		}
+		return String.valueOf(Character.MAX_VALUE);
+	}
+
 	static String format(String pattern, Locale locale, Object obj) {
 		if (pattern != null && obj != null) {
 			if (pattern.indexOf("{0") >= 0 || pattern.indexOf("{1") >= 0 || pattern.indexOf("{2") >= 0 || pattern.indexOf("{3") >= 0) {
 				try {
-					return new MessageFormat(pattern, locale).format(obj);
+					return formats.format(pattern, locale, obj);
 				} catch (IllegalArgumentException e) {
 					// ignore
 				}
@@ -111,16 +132,27 @@ public class Util {
 		return null;
 	}
 
+	/**
+	 * Serializability verdict per class, computed once by Jackson
+	 * introspection. Common JDK types skip the introspection.
+	 */
+	private final static ClassValue<Boolean> serializable = new ClassValue<Boolean>() {
+		@Override
+		protected Boolean computeValue(Class<?> type) {
+			if (type == String.class || type == Boolean.class || type == Character.class || type == Integer.class || type == Long.class
+					|| type == Short.class || type == Byte.class || type == Double.class || type == Float.class || type.isEnum())
+				return Boolean.TRUE;
+			return Boolean.valueOf(mapper.canSerialize(type) && mapper.canDeserialize(mapper.constructType(type)));
+		}
+	};
+
 	static boolean isSerializable(Object[] objs) {
 		if (objs == null)
 			return false;
 
 		for (Object obj : objs) {
 			if (obj != null) {
-				Class<?> type = obj.getClass();
-				if (!mapper.canSerialize(type))
-					return false;
-				if (!mapper.canDeserialize(mapper.constructType(type)))
+				if (!serializable.get(obj.getClass()).booleanValue())
 					return false;
 			}
 		}
@@ -165,9 +197,8 @@ public class Util {
 			log.log(Level.FINE, "Failed to read from JSON string with default typing", e);
 		}
 
-		ObjectMapper mapper = new ObjectMapper();
 		try {
-			List<Object> list = (List<Object>) mapper.readValue(json, Object.class);
+			List<Object> list = (List<Object>) untypedMapper.readValue(json, Object.class);
 			if (list.size() > 1)
 				return ((List<Object>) list.get(1)).toArray();
 		} catch (Exception e) {
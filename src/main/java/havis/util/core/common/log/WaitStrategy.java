@@ -0,0 +1,70 @@
+package havis.util.core.common.log;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Strategy of the {@link RingLogQueue} consumer to wait for new elements
+ */
+public enum WaitStrategy {
+
+	/**
+	 * Busy spins, lowest latency at the cost of one core
+	 */
+	SPIN {
+		@Override
+		void idle(Object blocker, long nanos) {
+		}
+	},
+
+	/**
+	 * Yields the processor to other threads
+	 */
+	YIELD {
+		@Override
+		void idle(Object blocker, long nanos) {
+			Thread.yield();
+		}
+	},
+
+	/**
+	 * Parks the consumer until a producer publishes an element
+	 */
+	PARK {
+		@Override
+		void idle(Object blocker, long nanos) {
+			if (nanos > 0)
+				LockSupport.parkNanos(blocker, nanos);
+			else
+				LockSupport.park(blocker);
+		}
+	};
+
+	/**
+	 * Waits once
+	 * 
+	 * @param blocker
+	 *            The object the thread is waiting for
+	 * @param nanos
+	 *            The maximum time to wait, or zero to wait until unparked
+	 */
+	abstract void idle(Object blocker, long nanos);
+
+	/**
+	 * Returns the strategy by name
+	 * 
+	 * @param value
+	 *            The name of the strategy
+	 * @param defaultValue
+	 *            The strategy to return if the name is unknown
+	 * @return The strategy
+	 */
+	static WaitStrategy valueOf(String value, WaitStrategy defaultValue) {
+		if (value != null)
+			try {
+				return valueOf(value.trim().toUpperCase());
+			} catch (IllegalArgumentException e) {
+				// fall through
+			}
+		return defaultValue;
+	}
+}
@@ -60,7 +60,7 @@ public class BundleProcessHandler extends CommonProcessHandler {
 				@Override
 				public Observable getService(Bundle b, ServiceRegistration<Observable> registration) {
 					startRegistry();
-					return new ProcessClient(b, registry, null, clazz);
+					return new ProcessClient(b, registry, null, clazz, processPool);
 				}
 
 				@Override
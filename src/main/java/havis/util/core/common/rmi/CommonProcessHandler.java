@@ -1,5 +1,6 @@
 package havis.util.core.common.rmi;
 
+import havis.util.core.common.Environment;
 import havis.util.core.rmi.ProcessHandler;
 
 import java.io.IOException;
@@ -45,6 +46,7 @@ public class CommonProcessHandler implements ProcessHandler {
 	protected AtomicBoolean started = new AtomicBoolean(false);
 	protected Registry registry;
 	protected LogRemoteServer logRemoteServer;
+	protected ProcessPool processPool;
 
 	private Map<String, String[]> registrations = new HashMap<>();
 
@@ -83,6 +85,9 @@ public class CommonProcessHandler implements ProcessHandler {
 					Thread.currentThread().setContextClassLoader(current);
 				}
 				this.logRemoteServer = new LogRemoteServer(this.registry);
+				if (Environment.PROCESS_POOL.intValue() > 0)
+					this.processPool = new ProcessPool(Environment.PROCESS_POOL.intValue(), Environment.PROCESS_POOL_LIMIT.intValue(),
+							Math.max(0, Environment.PROCESS_POOL_EXPIRY.intValue()));
 			} catch (RemoteException e) {
 				throw new IllegalStateException("Failed to initialize RMI registry", e);
 			}
@@ -91,6 +96,11 @@ public class CommonProcessHandler implements ProcessHandler {
 
 	private void stopRegistry() {
 		if (started.compareAndSet(true, false)) {
+			// idle processes use the log remote of the stopped registry
+			if (this.processPool != null) {
+				this.processPool.close();
+				this.processPool = null;
+			}
 			if (this.logRemoteServer != null) {
 				this.logRemoteServer.dispose();
 				this.logRemoteServer = null;
@@ -167,7 +177,10 @@ public class CommonProcessHandler implements ProcessHandler {
 
 	/**
 	 * Retrieves a new process client which can be used to start a process (call
-	 * {@link ProcessClient#close()} to stop the process).
+	 * {@link ProcessClient#close()} to stop the process). If the property
+	 * havis.util.core.common.processPool is greater than zero, the process is
+	 * taken from a pool of idle processes with the same class path and JVM
+	 * options.
 	 * 
 	 * @param clazz
 	 *            the class to run (must be registered)
@@ -192,7 +205,7 @@ public class CommonProcessHandler implements ProcessHandler {
 			for (String c : entry.getValue()) {
 				if (c.equals(clazz)) {
 					startRegistry();
-					return new ProcessClient(null, this.registry, moduleName, clazz);
+					return new ProcessClient(null, this.registry, moduleName, clazz, this.processPool);
 				}
 			}
 		}
@@ -0,0 +1,106 @@
+package havis.util.core.common.rmi;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Ring buffer of the last console lines of a process with a single writer and
+ * any number of readers. The buffer is limited by the number of lines and by
+ * the size of the lines, the oldest lines are evicted first. The writer
+ * increments a sequence before and after each modification, a reader takes a
+ * snapshot and retries if the sequence was odd or has changed meanwhile.
+ */
+class ConsoleBuffer {
+
+	private final int capacity;
+	private final int maxSize;
+	private final AtomicReferenceArray<String> lines;
+
+	private volatile long sequence;
+	private volatile long head;
+	private volatile long tail;
+	private volatile int size;
+
+	/**
+	 * Creates a new console buffer
+	 * 
+	 * @param capacity
+	 *            The maximum number of lines
+	 * @param maxSize
+	 *            The maximum size of the lines in bytes, the size of a line is
+	 *            estimated by its number of characters
+	 */
+	ConsoleBuffer(int capacity, int maxSize) {
+		this.capacity = Math.max(1, capacity);
+		this.maxSize = Math.max(1, maxSize);
+		this.lines = new AtomicReferenceArray<>(this.capacity);
+	}
+
+	/**
+	 * Adds a line and evicts the oldest lines exceeding the limits, must only
+	 * be called by the writer
+	 * 
+	 * @param line
+	 *            The line
+	 */
+	void add(String line) {
+		if (line.length() > maxSize)
+			line = line.substring(0, maxSize);
+		long head = this.head, tail = this.tail;
+		int size = this.size;
+		sequence++;
+		while (tail - head >= capacity || tail > head && size + line.length() > maxSize) {
+			int index = (int) (head++ % capacity);
+			size -= lines.get(index).length();
+			lines.set(index, null);
+		}
+		lines.set((int) (tail++ % capacity), line);
+		this.size = size + line.length();
+		this.head = head;
+		this.tail = tail;
+		sequence++;
+	}
+
+	/**
+	 * @return The number of lines
+	 */
+	int lines() {
+		while (true) {
+			long sequence = this.sequence;
+			if ((sequence & 1) == 0) {
+				int lines = (int) (tail - head);
+				if (sequence == this.sequence)
+					return lines;
+			}
+			Thread.yield();
+		}
+	}
+
+	/**
+	 * Appends a consistent snapshot of the lines
+	 * 
+	 * @param builder
+	 *            The builder to append to
+	 * @param separator
+	 *            The line separator
+	 * @return The builder
+	 */
+	StringBuilder appendTo(StringBuilder builder, String separator) {
+		int length = builder.length();
+		while (true) {
+			long sequence = this.sequence;
+			if ((sequence & 1) == 0) {
+				builder.ensureCapacity(length + size + separator.length() * (int) (tail - head));
+				for (long i = head, tail = this.tail; i < tail; i++) {
+					String line = lines.get((int) (i % capacity));
+					if (line == null)
+						break; // evicted meanwhile
+					builder.append(line).append(separator);
+				}
+				if (sequence == this.sequence)
+					return builder;
+				builder.setLength(length);
+			}
+			Thread.yield();
+		}
+	}
+}
@@ -0,0 +1,43 @@
+package havis.util.core.common.rmi;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.logging.Level;
+
+/**
+ * Logger levels of the parent process with the version stamp of the levels
+ */
+public class LevelSnapshot implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final long version;
+	private final Map<String, Level> levels;
+
+	/**
+	 * Creates a new level snapshot
+	 * 
+	 * @param version
+	 *            the version of the levels
+	 * @param levels
+	 *            the levels by logger name
+	 */
+	public LevelSnapshot(long version, Map<String, Level> levels) {
+		this.version = version;
+		this.levels = levels;
+	}
+
+	/**
+	 * @return the version of the levels
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * @return the levels by logger name
+	 */
+	public Map<String, Level> getLevels() {
+		return levels;
+	}
+}
@@ -0,0 +1,87 @@
+package havis.util.core.common.rmi;
+
+import havis.util.core.common.Environment;
+
+import java.rmi.RemoteException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the logger levels of a process server in sync with the levels of the
+ * parent process. The levels are polled with their version stamp, thus a poll
+ * without changes returns no levels. The loggers are referenced to keep their
+ * levels, loggers removed from the parent levels are reset to inherit their
+ * level.
+ */
+class LevelSync implements Runnable {
+
+	private final LogBatchRemote logRemote;
+	private final long interval = Math.max(0, Environment.LOG_LEVEL_POLL.intValue());
+	private final Map<String, Logger> loggers = new HashMap<>();
+	private long version;
+
+	/**
+	 * Creates a new level sync
+	 * 
+	 * @param logRemote
+	 *            the log remote of the parent process
+	 */
+	LevelSync(LogBatchRemote logRemote) {
+		this.logRemote = logRemote;
+	}
+
+	/**
+	 * Starts polling, unless disabled by a poll interval of zero
+	 */
+	void start() {
+		if (interval > 0) {
+			Thread thread = new Thread(this, LevelSync.class.getSimpleName());
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	/**
+	 * Applies the levels of the parent process, if they changed since the
+	 * last update
+	 * 
+	 * @return true if the levels changed
+	 * @throws RemoteException
+	 *             if the remote call fails
+	 */
+	synchronized boolean update() throws RemoteException {
+		LevelSnapshot snapshot = logRemote.getLevels(version);
+		if (snapshot == null)
+			return false;
+		Map<String, Level> levels = snapshot.getLevels();
+		for (Entry<String, Logger> entry : loggers.entrySet())
+			if (!levels.containsKey(entry.getKey()))
+				entry.getValue().setLevel(null);
+		loggers.keySet().retainAll(levels.keySet());
+		for (Entry<String, Level> entry : levels.entrySet()) {
+			Logger logger = loggers.get(entry.getKey());
+			if (logger == null)
+				loggers.put(entry.getKey(), logger = Logger.getLogger(entry.getKey()));
+			logger.setLevel(entry.getValue());
+		}
+		version = snapshot.getVersion();
+		return true;
+	}
+
+	@Override
+	public void run() {
+		while (!Thread.currentThread().isInterrupted()) {
+			try {
+				Thread.sleep(interval);
+				update();
+			} catch (InterruptedException e) {
+				return;
+			} catch (RemoteException e) {
+				// parent not reachable, retry with the next poll
+			}
+		}
+	}
+}
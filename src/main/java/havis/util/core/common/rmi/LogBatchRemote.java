@@ -0,0 +1,36 @@
+package havis.util.core.common.rmi;
+
+import havis.util.core.rmi.LogRemote;
+
+import java.rmi.RemoteException;
+import java.util.List;
+import java.util.logging.LogRecord;
+
+/**
+ * Remote logging with batches of log records, which costs one remote call per
+ * batch instead of one per record, and with version stamped logger levels,
+ * which lets clients poll for level changes
+ */
+public interface LogBatchRemote extends LogRemote {
+
+	/**
+	 * Logs the records in the given order
+	 * 
+	 * @param records
+	 *            the log records
+	 * @throws RemoteException
+	 *             if the remote call fails
+	 */
+	void log(List<LogRecord> records) throws RemoteException;
+
+	/**
+	 * Returns the logger levels, if they changed since the given version
+	 * 
+	 * @param version
+	 *            the version of the levels known by the client, 0 if none
+	 * @return the current levels or null if the version is current
+	 * @throws RemoteException
+	 *             if the remote call fails
+	 */
+	LevelSnapshot getLevels(long version) throws RemoteException;
+}
@@ -1,14 +1,14 @@
 package havis.util.core.common.rmi;
 
-import havis.util.core.rmi.LogRemote;
-
 import java.rmi.NotBoundException;
 import java.rmi.RemoteException;
 import java.rmi.registry.Registry;
 import java.rmi.server.UnicastRemoteObject;
 import java.util.Enumeration;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.LogManager;
 import java.util.logging.LogRecord;
@@ -17,11 +17,19 @@ import java.util.logging.Logger;
 /**
  * Server for logging remotely
  */
-public class LogRemoteServer implements LogRemote {
+public class LogRemoteServer implements LogBatchRemote {
 
 	public final static String NAME = "LogServer";
 
+	/**
+	 * The minimum time between two scans of the logger levels
+	 */
+	private final static long LEVEL_SCAN_INTERVAL_MS = 1000;
+
 	private Registry registry;
+	private Map<String, Level> levels;
+	private long version;
+	private long scanned;
 
 	/**
 	 * Creates a new log remote server
@@ -45,6 +53,30 @@ public class LogRemoteServer implements LogRemote {
 		Logger.getLogger(record.getLoggerName() != null ? record.getLoggerName() : "").log(record);
 	}
 
+	@Override
+	public void log(List<LogRecord> records) throws RemoteException {
+		for (LogRecord record : records)
+			log(record);
+	}
+
+	/**
+	 * Scans the logger levels at most once per scan interval and increments
+	 * the version, if the levels changed
+	 */
+	@Override
+	public synchronized LevelSnapshot getLevels(long version) throws RemoteException {
+		long now = System.nanoTime();
+		if (levels == null || now - scanned >= TimeUnit.MILLISECONDS.toNanos(LEVEL_SCAN_INTERVAL_MS)) {
+			Map<String, Level> levels = getLevels();
+			if (!levels.equals(this.levels)) {
+				this.levels = levels;
+				this.version++;
+			}
+			scanned = now;
+		}
+		return version == this.version ? null : new LevelSnapshot(this.version, levels);
+	}
+
 	@Override
 	public Map<String, Level> getLevels() throws RemoteException {
 		Map<String, Level> levels = new LinkedHashMap<>();
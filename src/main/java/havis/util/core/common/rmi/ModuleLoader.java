@@ -0,0 +1,73 @@
+package havis.util.core.common.rmi;
+
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Loads the server class assigned to an idle process server. The idle process
+ * was started without the module options of the server class, thus the module
+ * is resolved from the module path in a new module layer, which exports the
+ * package of the server class to this module. The module API is used by
+ * reflection, it is not available in Java 8.
+ */
+class ModuleLoader {
+
+	private ModuleLoader() {
+	}
+
+	/**
+	 * Loads the server class from its module
+	 * 
+	 * @param moduleName
+	 *            the name of the server module
+	 * @param className
+	 *            the name of the server class
+	 * @return the server class
+	 * @throws ReflectiveOperationException
+	 *             if the module could not be resolved, the package of a module
+	 *             resolved on start is not exported or the class could not be
+	 *             loaded
+	 */
+	static Class<?> load(String moduleName, String className) throws ReflectiveOperationException {
+		Class<?> layerClass = Class.forName("java.lang.ModuleLayer");
+		Class<?> controllerClass = Class.forName("java.lang.ModuleLayer$Controller");
+		Class<?> configurationClass = Class.forName("java.lang.module.Configuration");
+		Class<?> finderClass = Class.forName("java.lang.module.ModuleFinder");
+		Class<?> moduleClass = Class.forName("java.lang.Module");
+		String packageName = className.substring(0, className.lastIndexOf('.'));
+		try {
+			Object self = Class.class.getMethod("getModule").invoke(ModuleLoader.class);
+			Object boot = layerClass.getMethod("boot").invoke(null);
+			Optional<?> resolved = (Optional<?>) layerClass.getMethod("findModule", String.class).invoke(boot, moduleName);
+			if (resolved.isPresent()) {
+				// resolved on start, exports can only be added by options
+				if (!(Boolean) moduleClass.getMethod("isExported", String.class, moduleClass).invoke(resolved.get(), packageName, self))
+					throw new IllegalAccessException("Package " + packageName + " of module " + moduleName + " is not exported");
+				return Class.forName(className);
+			}
+			String[] entries = System.getProperty("jdk.module.path", "").split(File.pathSeparator);
+			Path[] paths = new Path[entries.length];
+			for (int i = 0; i < entries.length; i++)
+				paths[i] = Paths.get(entries[i]);
+			Object finder = finderClass.getMethod("of", Path[].class).invoke(null, (Object) paths);
+			Object none = finderClass.getMethod("of", Path[].class).invoke(null, (Object) new Path[0]);
+			// modules of the boot layer are preferred
+			Object configuration = configurationClass.getMethod("resolve", finderClass, finderClass, Collection.class).invoke(
+					layerClass.getMethod("configuration").invoke(boot), none, finder, Collections.singleton(moduleName));
+			Object controller = layerClass.getMethod("defineModulesWithOneLoader", configurationClass, List.class, ClassLoader.class).invoke(null,
+					configuration, Collections.singletonList(boot), ModuleLoader.class.getClassLoader());
+			Object layer = controllerClass.getMethod("layer").invoke(controller);
+			Object module = ((Optional<?>) layerClass.getMethod("findModule", String.class).invoke(layer, moduleName)).get();
+			controllerClass.getMethod("addExports", moduleClass, String.class, moduleClass).invoke(controller, module, packageName, self);
+			return ((ClassLoader) layerClass.getMethod("findLoader", String.class).invoke(layer, moduleName)).loadClass(className);
+		} catch (InvocationTargetException e) {
+			throw new ReflectiveOperationException("Failed to load " + className + " from module " + moduleName, e.getCause());
+		}
+	}
+}
@@ -6,14 +6,19 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.rmi.NotBoundException;
 import java.rmi.Remote;
 import java.rmi.RemoteException;
 import java.rmi.registry.Registry;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
@@ -24,9 +29,11 @@ import java.util.Observer;
 import java.util.Scanner;
 import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
@@ -47,6 +54,18 @@ public class ProcessClient extends Observable {
 	private static final String MODULE_NAME = "havis.util.core.common";
 	private static final String ADDITIONAL_ARGUMENTS_PROPERTY_KEY = "havis.util.core.common.rmi.AdditionalArgumentsFile";
 	private static final int MAX_CONSOLE_LINES = 100;
+	private static final int MAX_CONSOLE_SIZE = 16 * 1024;
+
+	/**
+	 * The Java version supporting dynamic class data sharing archives
+	 */
+	private static final int ARCHIVE_JAVA_VERSION = 13;
+	private static final long ARCHIVE_TIMEOUT_MS = 10000;
+
+	/**
+	 * The archives currently created by a process
+	 */
+	private static final Set<File> archiving = ConcurrentHashMap.newKeySet();
 
 	private Logger log;
 	private Registry registry;
@@ -56,6 +75,10 @@ public class ProcessClient extends Observable {
 	private List<String> additionalJvmArguments;
 	private String classPath;
 	private String libraryPath;
+	private ProcessPool pool;
+	private File archive;
+	private boolean archiveCreating;
+	private boolean pooledProcess;
 
 	private volatile boolean running;
 	private String name;
@@ -64,7 +87,12 @@ public class ProcessClient extends Observable {
 	private Remote remoteStub;
 	private ExecutorService watcherExecutorService;
 	private ExecutorService consoleExecutorService;
-	private List<String> consoleLines = new CopyOnWriteArrayList<>();
+	private volatile ConsoleBuffer console = new ConsoleBuffer(MAX_CONSOLE_LINES, MAX_CONSOLE_SIZE);
+	private volatile CountDownLatch ready;
+	private volatile long startTime = -1;
+	private volatile long coldStartTime = -1;
+	private volatile long warmStartTime = -1;
+	private volatile long pooledStartTime = -1;
 
 	private RemoteConnectionListener listener;
 
@@ -114,30 +142,36 @@ public class ProcessClient extends Observable {
 	private Runnable consoleReader = new Runnable() {
 		@Override
 		public void run() {
-			consoleLines.clear();
+			// keep the console, latch and marker of this start, the reader of
+			// a previous start might still run until its process ended
+			ConsoleBuffer console = ProcessClient.this.console;
+			CountDownLatch ready = ProcessClient.this.ready;
+			String marker = ProcessServer.READY_MARKER + name;
 			InputStream input;
-			if (process != null && (input = process.getInputStream()) != null) {
-				try (BufferedReader reader = new BufferedReader(new InputStreamReader(input))) {
-					String line = null;
-					while ((line = reader.readLine()) != null) {
-						consoleLines.add(line);
-						if (consoleLines.size() > MAX_CONSOLE_LINES) {
-							consoleLines.remove(0);
+			try {
+				if (process != null && (input = process.getInputStream()) != null) {
+					try (BufferedReader reader = new BufferedReader(new InputStreamReader(input))) {
+						String line = null;
+						while ((line = reader.readLine()) != null) {
+							if (ready.getCount() > 0 && line.equals(marker)) {
+								ready.countDown();
+								continue;
+							}
+							console.add(line);
 						}
+					} catch (IOException e) {
+						// process ended
 					}
-				} catch (IOException e) {
-					// process ended
 				}
+			} finally {
+				// stop waiting for a process which ended
+				ready.countDown();
 			}
 		}
 	};
 
 	private String getConsoleMessages() {
-		StringBuilder b = new StringBuilder();
-		for (String line : consoleLines) {
-			b.append(line);
-		}
-		return b.toString();
+		return this.console.appendTo(new StringBuilder(), "\n").toString();
 	}
 
 	/**
@@ -152,20 +186,54 @@ public class ProcessClient extends Observable {
 	 *            the server module name containing the server class
 	 * @param serverClass
 	 *            the server class implementing the {@link Remote} interface
+	 * @param pool
+	 *            the pool of idle processes, or null to always start a new
+	 *            process
 	 */
-	ProcessClient(Bundle bundle, Registry registry, String serverModuleName, String serverClass) {
+	ProcessClient(Bundle bundle, Registry registry, String serverModuleName, String serverClass, ProcessPool pool) {
 		this.log = Logger.getLogger(serverClass);
 		this.registry = registry;
+		this.pool = pool;
 		this.serverModuleName = serverModuleName;
 		this.serverClass = Objects.requireNonNull(serverClass, "serverClass must not be null");
 		this.displayName = createDisplayName(serverClass);
 		this.additionalJvmArguments = getAdditionalJvmArguments(System.getProperty(ADDITIONAL_ARGUMENTS_PROPERTY_KEY));
-		if (bundle != null)
+		if (bundle != null) {
 			createPaths(bundle);
-		else
+			this.archive = createArchiveFile(bundle);
+		} else
 			copyJvmArguments();
 	}
 
+	/**
+	 * Creates the file of the class data sharing archive, which is named by
+	 * the hash of the class path and the JVM version. Server classes with the
+	 * same class path share the archive as they share the pooled processes.
+	 * 
+	 * @param bundle
+	 *            the bundle to store the archive in
+	 * @return the archive file or null if not supported
+	 */
+	private File createArchiveFile(Bundle bundle) {
+		if (getJavaVersion() < ARCHIVE_JAVA_VERSION)
+			return null;
+		File directory = bundle.getDataFile("cds");
+		if (directory == null || !(directory.isDirectory() || directory.mkdirs()))
+			return null;
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			digest.update(this.classPath.getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) 0);
+			digest.update(String.valueOf(System.getProperty("java.vm.version")).getBytes(StandardCharsets.UTF_8));
+			StringBuilder name = new StringBuilder();
+			for (byte b : digest.digest())
+				name.append(String.format("%02x", Integer.valueOf(b & 0xff)));
+			return new File(directory, name.append(".jsa").toString());
+		} catch (NoSuchAlgorithmException e) {
+			return null;
+		}
+	}
+
 	private List<String> getAdditionalJvmArguments(String file) {
 		List<String> result = new ArrayList<>();
 		if (file != null) {
@@ -340,6 +408,38 @@ public class ProcessClient extends Observable {
 		}
 	}
 
+	/**
+	 * @return the time in milliseconds the last start took until the remote
+	 *         object was bound, or -1 if the process was not started yet
+	 */
+	public long getStartTime() {
+		return this.startTime;
+	}
+
+	/**
+	 * @return the time in milliseconds the last start without class data
+	 *         sharing archive took, or -1 if there was no such start
+	 */
+	public long getColdStartTime() {
+		return this.coldStartTime;
+	}
+
+	/**
+	 * @return the time in milliseconds the last start with class data sharing
+	 *         archive took, or -1 if there was no such start
+	 */
+	public long getWarmStartTime() {
+		return this.warmStartTime;
+	}
+
+	/**
+	 * @return the time in milliseconds the last start from an idle process of
+	 *         the pool took, or -1 if there was no such start
+	 */
+	public long getPooledStartTime() {
+		return this.pooledStartTime;
+	}
+
 	private int getJavaVersion() {
 		String version = System.getProperty("java.specification.version");
 		if (version != null && version.length() > 0) {
@@ -357,8 +457,33 @@ public class ProcessClient extends Observable {
 	}
 
 	private void start() throws InterruptedException {
+		if (this.pool != null && !this.running)
+			try {
+				start(true);
+				return;
+			} catch (IllegalStateException e) {
+				if (!this.pooledProcess)
+					throw e;
+				log.log(Level.FINE, "Failed to start process " + this.displayName + " from the pool, starting a new process", e);
+			}
+		start(false);
+	}
+
+	/**
+	 * Starts the process
+	 * 
+	 * @param pooled
+	 *            true to take an idle process from the pool, false to start a
+	 *            new process
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for the remote object
+	 */
+	private void start(boolean pooled) throws InterruptedException {
 		if (!this.running) {
 			this.name = UUID.randomUUID().toString();
+			this.ready = new CountDownLatch(1);
+			this.console = new ConsoleBuffer(MAX_CONSOLE_LINES, MAX_CONSOLE_SIZE);
+			boolean shared = this.archive != null && this.archive.isFile();
 			long start = System.currentTimeMillis();
 			try {
 				List<String> commands = new ArrayList<>();
@@ -371,20 +496,12 @@ public class ProcessClient extends Observable {
 					commands.add("-cp");
 					commands.add(this.classPath);
 				}
-				commands.add("-D" + ProcessServer.NAME_PROPERTY_KEY + "=" + this.name);
-				commands.add("-D" + ProcessServer.CLASS_PROPERTY_KEY + "=" + this.serverClass);
+				int properties = commands.size();
 				commands.add("-Djava.security.egd=file:/dev/./urandom");
 				commands.addAll(this.additionalJvmArguments);
-				if (getJavaVersion() >= 9) {
-					if (this.serverModuleName != null) {
-						// we won't have access to the server class,
-						// first add the module, then add an export
-						commands.add("--add-modules");
-						commands.add(this.serverModuleName);
-						commands.add("--add-exports");
-						String serverPackage = this.serverClass.substring(0, this.serverClass.lastIndexOf('.'));
-						commands.add(this.serverModuleName + "/" + serverPackage + "=" + MODULE_NAME);
-					}
+				int main = commands.size();
+				boolean modules = getJavaVersion() >= 9;
+				if (modules) {
 					// set main
 					commands.add("-m");
 					commands.add(MODULE_NAME + "/" + ProcessServer.class.getName());
@@ -392,8 +509,47 @@ public class ProcessClient extends Observable {
 					// traditional main
 					commands.add(ProcessServer.class.getName());
 				}
-				log.log(Level.FINE, "Process " + this.displayName + " will be started with the following arguments: " + commands.toString());
-				this.process = new ProcessBuilder(commands).redirectErrorStream(true).start();
+				// the pool is keyed by class path and JVM options only, the
+				// module of the server class is assigned with the class and
+				// the archive is added when the idle process is started
+				this.process = pooled ? this.pool.take(commands, this.archive) : null;
+				this.pooledProcess = this.process != null;
+				if (this.process != null) {
+					try {
+						// assign name, class and module to the idle process
+						Writer writer = new OutputStreamWriter(this.process.getOutputStream());
+						writer.write(this.name + "\n" + this.serverClass + "\n" + (modules && this.serverModuleName != null ? this.serverModuleName : "")
+								+ "\n");
+						writer.flush();
+						log.log(Level.FINE, "Process " + this.displayName + " will be started from the pool");
+					} catch (IOException e) {
+						// idle process ended, start a new one
+						this.process.destroy();
+						this.process = null;
+						this.pooledProcess = false;
+					}
+				}
+				if (this.process == null) {
+					commands = new ArrayList<>(commands);
+					if (modules && this.serverModuleName != null) {
+						// we won't have access to the server class,
+						// first add the module, then add an export
+						String serverPackage = this.serverClass.substring(0, this.serverClass.lastIndexOf('.'));
+						commands.addAll(main, Arrays.asList("--add-modules", this.serverModuleName, "--add-exports", this.serverModuleName + "/"
+								+ serverPackage + "=" + MODULE_NAME));
+					}
+					commands.addAll(properties, Arrays.asList("-D" + ProcessServer.NAME_PROPERTY_KEY + "=" + this.name, "-D"
+							+ ProcessServer.CLASS_PROPERTY_KEY + "=" + this.serverClass));
+					if (shared)
+						commands.add(properties, "-XX:SharedArchiveFile=" + this.archive.getAbsolutePath());
+					else if (this.archive != null && archiving.add(this.archive)) {
+						// the archive is written when the process exits
+						this.archiveCreating = true;
+						commands.add(properties, "-XX:ArchiveClassesAtExit=" + this.archive.getAbsolutePath());
+					}
+					log.log(Level.FINE, "Process " + this.displayName + " will be started with the following arguments: " + commands.toString());
+					this.process = new ProcessBuilder(commands).redirectErrorStream(true).start();
+				}
 				this.consoleExecutorService = Executors.newSingleThreadExecutor();
 				this.consoleExecutorService.execute(consoleReader);
 			} catch (IOException e) {
@@ -401,14 +557,20 @@ public class ProcessClient extends Observable {
 			}
 
 			try {
-				int tries = 0;
-				while (this.process.isAlive() && !Arrays.asList(this.registry.list()).contains(this.name)
-						&& tries++ < (ProcessServer.MAX_PROCESS_TIMEOUT_MS / ProcessServer.PROCESS_POLL_INTERVAL_MS)) {
-					Thread.sleep(ProcessServer.PROCESS_POLL_INTERVAL_MS);
-				}
+				// the process signals readiness on the console, when the
+				// remote object is bound, or ends
+				this.ready.await(ProcessServer.MAX_PROCESS_TIMEOUT_MS, TimeUnit.MILLISECONDS);
 				this.remoteStub = this.registry.lookup(this.name);
 				this.running = true;
-				log.log(Level.FINE, "Process " + this.displayName + " started in " + Long.toString(System.currentTimeMillis() - start) + "ms");
+				this.startTime = System.currentTimeMillis() - start;
+				if (this.pooledProcess)
+					this.pooledStartTime = this.startTime;
+				else if (shared)
+					this.warmStartTime = this.startTime;
+				else
+					this.coldStartTime = this.startTime;
+				log.log(Level.FINE, "Process " + this.displayName + " started in " + Long.toString(this.startTime) + "ms"
+						+ (this.pooledProcess ? " from the pool" : shared ? " using class data sharing archive" : ""));
 			} catch (RemoteException | NotBoundException e) {
 				if (this.process.isAlive())
 					throw new IllegalStateException("Failed to retrieve running process instance \"" + this.displayName + "\": " + e.getMessage()
@@ -424,6 +586,10 @@ public class ProcessClient extends Observable {
 					}
 					// starting failed, kill non working process
 					this.process.destroy();
+					if (this.archiveCreating) {
+						this.archiveCreating = false;
+						archiving.remove(this.archive);
+					}
 				}
 			}
 		}
@@ -450,6 +616,18 @@ public class ProcessClient extends Observable {
 					this.consoleExecutorService.shutdownNow();
 					this.consoleExecutorService = null;
 				}
+				if (this.archiveCreating) {
+					// let the process exit to write the archive
+					this.archiveCreating = false;
+					this.process.destroy();
+					try {
+						this.process.waitFor(ARCHIVE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					} finally {
+						archiving.remove(this.archive);
+					}
+				}
 				this.process.destroyForcibly();
 			}
 			this.running = false;
@@ -0,0 +1,189 @@
+package havis.util.core.common.rmi;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Pool of started, idle process servers per command line. The command line
+ * consists of the class path and the JVM options only, the module of the
+ * server class is not part of it, thus server classes with the same class path
+ * share a pool. An idle process server has initialized logging and waits for
+ * the parent process to assign the name, the server class and its module on
+ * its standard input, see {@link ProcessServer}. The class data sharing archive
+ * is not part of the command line either, it is added when an idle process is
+ * started and the archive exists. A command line is pooled on
+ * its first use, each taken process is replaced in the background. The number
+ * of pooled command lines is limited, the least recently used pool is closed
+ * first, and pools not used within the expiry time are closed.
+ */
+class ProcessPool {
+
+	private static final Logger log = Logger.getLogger(ProcessPool.class.getName());
+
+	/**
+	 * Idle processes of a command line and the time of the last use
+	 */
+	private static class Pool {
+		private final Deque<Process> processes = new ArrayDeque<>();
+		private long used;
+		private File archive;
+
+		private void destroy() {
+			for (Process process : processes)
+				process.destroy();
+			processes.clear();
+		}
+	}
+
+	private final int size;
+	private final int limit;
+	private final long expiry;
+	// access order, the least recently used pool comes first
+	private final Map<List<String>, Pool> pools = new LinkedHashMap<>(16, 0.75f, true);
+	private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+	private boolean closed;
+
+	/**
+	 * Creates a new pool
+	 * 
+	 * @param size
+	 *            the number of idle processes per command line
+	 * @param limit
+	 *            the maximum number of pooled command lines
+	 * @param expiry
+	 *            the time in milliseconds after which the idle processes of an
+	 *            unused command line are stopped, or 0 to keep them
+	 */
+	ProcessPool(int size, int limit, long expiry) {
+		this.size = size;
+		this.limit = Math.max(1, limit);
+		this.expiry = expiry;
+		if (expiry > 0)
+			executor.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					expire(System.currentTimeMillis());
+				}
+			}, expiry, expiry, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Takes an idle process and refills the pool in the background
+	 * 
+	 * @param commands
+	 *            the command line of the process without name, class and
+	 *            module
+	 * @param archive
+	 *            the class data sharing archive of the command line or null
+	 * @return the idle process or null if none is available
+	 */
+	synchronized Process take(final List<String> commands, File archive) {
+		if (closed)
+			return null;
+		Pool pool = pools.get(commands);
+		if (pool == null) {
+			pools.put(commands, pool = new Pool());
+			for (Iterator<Pool> iterator = pools.values().iterator(); pools.size() > limit;) {
+				Pool eldest = iterator.next();
+				iterator.remove();
+				eldest.destroy();
+			}
+		}
+		pool.used = System.currentTimeMillis();
+		if (archive != null)
+			pool.archive = archive;
+		Process process;
+		while ((process = pool.processes.poll()) != null && !process.isAlive())
+			process.destroy();
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				fill(commands);
+			}
+		});
+		return process;
+	}
+
+	private void fill(List<String> commands) {
+		while (true) {
+			File archive;
+			synchronized (this) {
+				Pool pool = pools.get(commands);
+				if (closed || pool == null || pool.processes.size() >= size)
+					return;
+				archive = pool.archive;
+			}
+			List<String> arguments = commands;
+			if (archive != null && archive.isFile()) {
+				// the executable comes first, the options follow
+				arguments = new ArrayList<>(commands);
+				arguments.add(1, "-XX:SharedArchiveFile=" + archive.getAbsolutePath());
+			}
+			Process process;
+			try {
+				process = new ProcessBuilder(arguments).redirectErrorStream(true).start();
+			} catch (IOException e) {
+				log.log(Level.WARNING, "Failed to start idle process", e);
+				return;
+			}
+			synchronized (this) {
+				Pool pool = pools.get(commands);
+				if (closed || pool == null) {
+					// closed or expired meanwhile
+					process.destroy();
+					return;
+				}
+				pool.processes.add(process);
+			}
+		}
+	}
+
+	/**
+	 * Stops the idle processes of the command lines not used within the
+	 * expiry time
+	 * 
+	 * @param now
+	 *            the current time in milliseconds
+	 */
+	synchronized void expire(long now) {
+		for (Iterator<Pool> iterator = pools.values().iterator(); iterator.hasNext();) {
+			Pool pool = iterator.next();
+			if (now - pool.used >= expiry) {
+				iterator.remove();
+				pool.destroy();
+			}
+		}
+	}
+
+	/**
+	 * @return the number of pooled command lines
+	 */
+	synchronized int size() {
+		return pools.size();
+	}
+
+	/**
+	 * Stops the idle processes
+	 */
+	void close() {
+		executor.shutdownNow();
+		synchronized (this) {
+			closed = true;
+			for (Pool pool : pools.values())
+				pool.destroy();
+			pools.clear();
+		}
+	}
+}
@@ -2,23 +2,26 @@ package havis.util.core.common.rmi;
 
 import havis.util.core.rmi.LogRemote;
 
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
 import java.net.InetAddress;
 import java.rmi.Remote;
-import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
 import java.rmi.server.UnicastRemoteObject;
 import java.util.Arrays;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.LogManager;
-import java.util.logging.LogRecord;
 import java.util.logging.Logger;
 
 /**
- * Process server with the main class
+ * Process server with the main class. The name and the server class are
+ * either passed as system properties or, if the process was started as idle
+ * process of a {@link ProcessPool}, assigned on the standard input line by
+ * line after logging was initialized. The assignment ends with the module of
+ * the server class, which is empty if the class is not loaded from a module.
  */
 public class ProcessServer {
 
@@ -30,9 +33,16 @@ public class ProcessServer {
 	public static final String NAME_PROPERTY_KEY = ProcessServer.class.getName() + ".Name";
 	public static final String CLASS_PROPERTY_KEY = ProcessServer.class.getName() + ".Class";
 
+	/**
+	 * Prefix of the line written to the standard output, when the server
+	 * object is bound, followed by the name
+	 */
+	static final String READY_MARKER = "#" + ProcessServer.class.getName() + ".Ready:";
+
 	public static void main(String[] args) throws Exception {
-		final String name = System.getProperty(NAME_PROPERTY_KEY);
-		Class<?> serverClass = Class.forName(System.getProperty(CLASS_PROPERTY_KEY));
+		String name = System.getProperty(NAME_PROPERTY_KEY);
+		String className = System.getProperty(CLASS_PROPERTY_KEY);
+		String moduleName = null;
 
 		CommonProcessHandler.setEnvironment();
 
@@ -44,50 +54,59 @@ public class ProcessServer {
 
 		Logger rootLogger = Logger.getLogger(ROOT_LOGGER_NAME);
 
-		Map<String, Level> levels = logRemote.getLevels();
-		for (Entry<String, Level> level : levels.entrySet()) {
-			Logger.getLogger(level.getKey()).setLevel(level.getValue());
+		if (logRemote instanceof LogBatchRemote) {
+			// levels are polled to follow changes of the parent
+			LevelSync levelSync = new LevelSync((LogBatchRemote) logRemote);
+			levelSync.update();
+			levelSync.start();
+		} else {
+			Map<String, Level> levels = logRemote.getLevels();
+			for (Entry<String, Level> level : levels.entrySet()) {
+				Logger.getLogger(level.getKey()).setLevel(level.getValue());
+			}
 		}
 
-		rootLogger.addHandler(new Handler() {
-			@Override
-			public void publish(LogRecord record) {
-				String name = record.getLoggerName() != null ? record.getLoggerName() : ROOT_LOGGER_NAME;
-				if (name.startsWith("sun.rmi."))
-					return; // skip to avoid stack overflow
-				if (Logger.getLogger(name).isLoggable(record.getLevel())) {
-					try {
-						logRemote.log(record);
-					} catch (RemoteException e) {
-						// ignore
-					}
-				}
+		final RemoteLogHandler handler = new RemoteLogHandler(logRemote);
+		rootLogger.addHandler(handler);
+
+		if (className == null) {
+			// idle process, wait for the assignment
+			BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
+			name = reader.readLine();
+			className = reader.readLine();
+			moduleName = reader.readLine();
+			if (name == null || className == null || moduleName == null) {
+				// parent process ended or discarded the process
+				handler.close();
+				System.exit(0);
 			}
+		}
+		Class<?> serverClass = moduleName != null && moduleName.length() > 0 ? ModuleLoader.load(moduleName, className) : Class.forName(className);
 
-			@Override
-			public void flush() {
-			}
+		registry.rebind(name, UnicastRemoteObject.exportObject((Remote) serverClass.newInstance(), 0));
 
-			@Override
-			public void close() throws SecurityException {
-			}
-		});
+		// signal readiness to the parent process
+		System.out.println(READY_MARKER + name);
+		System.out.flush();
 
-		registry.rebind(name, UnicastRemoteObject.exportObject((Remote) serverClass.newInstance(), 0));
+		final String serverName = name;
 
 		Runtime.getRuntime().addShutdownHook(new Thread() {
 			@Override
 			public void run() {
+				handler.flush();
 				// if we receive a kill signal from the main process,
 				// wait a maximum of 30s for unbind on the registry before
 				// actually terminating
 				try {
 					int tries = 0;
-					while (Arrays.asList(registry.list()).contains(name) && tries++ < (MAX_PROCESS_TIMEOUT_MS / PROCESS_POLL_INTERVAL_MS)) {
+					while (Arrays.asList(registry.list()).contains(serverName) && tries++ < (MAX_PROCESS_TIMEOUT_MS / PROCESS_POLL_INTERVAL_MS)) {
 						Thread.sleep(PROCESS_POLL_INTERVAL_MS);
 					}
 				} catch (Exception e) {
 					return;
+				} finally {
+					handler.close();
 				}
 			}
 		});
@@ -0,0 +1,239 @@
+package havis.util.core.common.rmi;
+
+import havis.util.core.common.Environment;
+import havis.util.core.rmi.LogRemote;
+
+import java.io.Serializable;
+import java.rmi.MarshalException;
+import java.rmi.RemoteException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Formatter;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import java.util.logging.SimpleFormatter;
+
+/**
+ * Log handler of a process server, which sends the log records to the log
+ * remote server of the parent process. Records are buffered and sent batch
+ * wise by a background thread, thus logging does not wait for a remote call.
+ * The buffer is limited by the estimated size of the records, records are
+ * dropped if the buffer is full and the number of dropped records is logged
+ * with the next batch. Pending records are sent without waiting for the batch
+ * timeout on flush and close.
+ */
+class RemoteLogHandler extends Handler implements Runnable {
+
+	private static final String ROOT_LOGGER_NAME = "";
+
+	private static final long CLOSE_TIMEOUT_MS = 5000;
+
+	private final LogRemote logRemote;
+	private final Formatter formatter = new SimpleFormatter();
+	private final Deque<LogRecord> buffer = new ArrayDeque<>();
+	private final long capacity = Math.max(1, Environment.LOG_REMOTE_BUFFER.intValue()) * 1024L;
+	private final int batchSize = Math.max(1, Environment.LOG_BATCH_SIZE.intValue());
+	private final long batchTimeout = Math.max(0, Environment.LOG_BATCH_TIMEOUT.intValue());
+	private final Thread thread;
+	private long size;
+	private long dropped;
+	private int sending;
+	private boolean flushing;
+	private boolean closed;
+
+	/**
+	 * Creates a new handler and starts the sending thread
+	 * 
+	 * @param logRemote
+	 *            the log remote of the parent process
+	 */
+	RemoteLogHandler(LogRemote logRemote) {
+		this.logRemote = logRemote;
+		this.thread = new Thread(this, RemoteLogHandler.class.getSimpleName());
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	@Override
+	public void publish(LogRecord record) {
+		String name = record.getLoggerName() != null ? record.getLoggerName() : ROOT_LOGGER_NAME;
+		if (name.startsWith("sun.rmi."))
+			return; // skip to avoid stack overflow
+		if (!Logger.getLogger(name).isLoggable(record.getLevel()))
+			return;
+		Object[] parameters = record.getParameters();
+		if (parameters != null)
+			for (Object parameter : parameters)
+				if (parameter != null && !(parameter instanceof Serializable)) {
+					// parameters are not sent, the message is formatted now
+					record = format(record);
+					break;
+				}
+		long size = estimate(record);
+		synchronized (this) {
+			if (closed)
+				return;
+			if (this.size + size > capacity) {
+				dropped++;
+				return;
+			}
+			buffer.add(record);
+			this.size += size;
+			if (buffer.size() >= batchSize)
+				notifyAll();
+		}
+	}
+
+	/**
+	 * Returns a copy of the record with the formatted message and without
+	 * parameters. The record itself is not modified, because it is passed to
+	 * the other handlers too.
+	 * 
+	 * @param record
+	 *            the record
+	 * @return the formatted copy
+	 */
+	private LogRecord format(LogRecord record) {
+		LogRecord copy = new LogRecord(record.getLevel(), formatter.formatMessage(record));
+		copy.setLoggerName(record.getLoggerName());
+		copy.setMillis(record.getMillis());
+		copy.setSequenceNumber(record.getSequenceNumber());
+		copy.setSourceClassName(record.getSourceClassName());
+		copy.setSourceMethodName(record.getSourceMethodName());
+		copy.setThreadID(record.getThreadID());
+		copy.setThrown(record.getThrown());
+		return copy;
+	}
+
+	/**
+	 * @return the estimated memory size of the record in bytes
+	 */
+	private static long estimate(LogRecord record) {
+		long size = 128;
+		if (record.getMessage() != null)
+			size += 2 * record.getMessage().length();
+		if (record.getParameters() != null)
+			size += 64 * record.getParameters().length;
+		if (record.getThrown() != null)
+			size += 4096;
+		return size;
+	}
+
+	/**
+	 * Sends the buffered records batch wise until closed. A batch is sent if
+	 * the batch size is reached, the oldest record waited for the batch
+	 * timeout or a flush was requested.
+	 */
+	@Override
+	public void run() {
+		List<LogRecord> records = new ArrayList<>(batchSize);
+		while (true) {
+			synchronized (this) {
+				try {
+					while (buffer.isEmpty() && !closed)
+						wait();
+					if (buffer.size() < batchSize && !closed && !flushing) {
+						long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(batchTimeout);
+						long remaining;
+						while (buffer.size() < batchSize && !closed && !flushing && (remaining = deadline - System.nanoTime()) > 0)
+							TimeUnit.NANOSECONDS.timedWait(this, remaining);
+					}
+				} catch (InterruptedException e) {
+					closed = true;
+				}
+				if (buffer.isEmpty() && closed)
+					return;
+				while (records.size() < batchSize && !buffer.isEmpty()) {
+					LogRecord record = buffer.poll();
+					size -= estimate(record);
+					records.add(record);
+				}
+				if (buffer.isEmpty())
+					flushing = false;
+				if (dropped > 0) {
+					LogRecord record = new LogRecord(Level.WARNING, "Dropped {0} log records due to full buffer");
+					record.setLoggerName(RemoteLogHandler.class.getName());
+					record.setParameters(new Object[] { Long.valueOf(dropped) });
+					records.add(record);
+					dropped = 0;
+				}
+				sending = records.size();
+			}
+			send(records);
+			records.clear();
+			synchronized (this) {
+				sending = 0;
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Sends the records, record by record if the batch could not be sent due
+	 * to a record, which is not serializable. Records are lost if the parent
+	 * process is not reachable.
+	 */
+	private void send(List<LogRecord> records) {
+		try {
+			if (logRemote instanceof LogBatchRemote) {
+				((LogBatchRemote) logRemote).log(records);
+				return;
+			}
+		} catch (MarshalException e) {
+			// fall through
+		} catch (RemoteException e) {
+			return;
+		}
+		for (LogRecord record : records) {
+			try {
+				logRemote.log(record);
+			} catch (RemoteException e) {
+				// ignore
+			}
+		}
+	}
+
+	/**
+	 * Requests to send the buffered records at once and waits until they are
+	 * sent
+	 */
+	@Override
+	public void flush() {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(CLOSE_TIMEOUT_MS);
+		synchronized (this) {
+			if (!buffer.isEmpty())
+				flushing = true;
+			notifyAll();
+			try {
+				long remaining;
+				while ((!buffer.isEmpty() || sending > 0) && thread.isAlive() && (remaining = deadline - System.nanoTime()) > 0)
+					TimeUnit.NANOSECONDS.timedWait(this, remaining);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Sends the pending records and stops the sending thread
+	 */
+	@Override
+	public void close() throws SecurityException {
+		synchronized (this) {
+			if (closed)
+				return;
+			closed = true;
+			notifyAll();
+		}
+		try {
+			thread.join(CLOSE_TIMEOUT_MS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
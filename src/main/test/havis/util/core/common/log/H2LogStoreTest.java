@@ -0,0 +1,154 @@
+package havis.util.core.common.log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class H2LogStoreTest {
+
+	private static LogEvent event(String logger, Level level, String message) {
+		LogRecord record = new LogRecord(level, message);
+		record.setLoggerName(logger);
+		return new LogEvent(record, false);
+	}
+
+	private static int rows(String url) throws SQLException {
+		// counts the committed rows on a connection of its own
+		try (Connection connection = DriverManager.getConnection(url); Statement statement = connection.createStatement()) {
+			try (ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM record")) {
+				return resultSet.next() ? resultSet.getInt(1) : 0;
+			}
+		}
+	}
+
+	@Test
+	public void recordTest() throws IOException, SQLException {
+		String url = "jdbc:h2:mem:store_record";
+		CommitStatistics statistics = new CommitStatistics();
+		try (H2LogStore store = new H2LogStore(url, null, 100, 100, 10, 0, Durability.RECORD, 0, 0, 1, statistics, null)) {
+			store.open();
+			store.append(Arrays.asList(event("a", Level.INFO, "1"), event("a", Level.INFO, "2"), event("a", Level.INFO, "3")));
+			// each record is committed on its own
+			Assert.assertEquals(3, statistics.getCommits());
+			Assert.assertEquals(3, rows(url));
+			Assert.assertEquals(-1, store.getTimeout());
+		}
+	}
+
+	@Test
+	public void groupTest() throws IOException, SQLException, InterruptedException {
+		String url = "jdbc:h2:mem:store_group";
+		CommitStatistics statistics = new CommitStatistics();
+		try (H2LogStore store = new H2LogStore(url, null, 100, 100, 10, 0, Durability.GROUP, 0, 1000, 3, statistics, null)) {
+			store.open();
+			store.append(Arrays.asList(event("a", Level.INFO, "1"), event("a", Level.INFO, "2")));
+			// the group is neither complete nor due
+			Assert.assertEquals(0, statistics.getCommits());
+			Assert.assertEquals(0, rows(url));
+			Assert.assertTrue(store.getTimeout() > -1);
+			store.append(Arrays.asList(event("a", Level.INFO, "3")));
+			Assert.assertEquals(1, statistics.getCommits());
+			Assert.assertEquals(3, rows(url));
+			Assert.assertEquals(-1, store.getTimeout());
+
+			store.append(Arrays.asList(event("a", Level.INFO, "4")));
+			Assert.assertEquals(3, rows(url));
+			// the worker wakes up to commit the group once it is due
+			Thread.sleep(store.getTimeout() + 10);
+			store.append(new ArrayList<LogEvent>());
+			Assert.assertEquals(2, statistics.getCommits());
+			Assert.assertEquals(4, rows(url));
+
+			store.append(Arrays.asList(event("a", Level.INFO, "5")));
+		}
+		// the pending group is committed on close
+		Assert.assertEquals(3, statistics.getCommits());
+	}
+
+	@Test
+	public void asyncTest() throws IOException, SQLException {
+		String url = "jdbc:h2:mem:store_async";
+		CommitStatistics statistics = new CommitStatistics();
+		try (H2LogStore store = new H2LogStore(url, null, 100, 100, 10, 0, Durability.ASYNC, 500, 0, 1, statistics, null)) {
+			store.open();
+			store.append(Arrays.asList(event("a", Level.INFO, "1"), event("a", Level.INFO, "2")));
+			// the batch is committed together
+			Assert.assertEquals(1, statistics.getCommits());
+			Assert.assertEquals(2, rows(url));
+		}
+	}
+
+	@Test
+	public void counterTest() throws IOException, SQLException {
+		String url = "jdbc:h2:mem:store_counter";
+		try (H2LogStore store = new H2LogStore(url, null, 4, 6, 10, 0, Durability.RECORD, 0, 0, 1, new CommitStatistics(), null)) {
+			store.open();
+			store.register("a");
+			store.append(Arrays.asList(event("a.x", Level.INFO, "1"), event("a.y", Level.WARNING, "2"), event("b", Level.INFO, "3")));
+			// loads the counter
+			Assert.assertEquals(2, store.size("a", Level.ALL.intValue()));
+			Assert.assertEquals(1, store.size("a", Level.WARNING.intValue()));
+			// committed entries are added to the loaded counter
+			store.append(Arrays.asList(event("a.x", Level.SEVERE, "4")));
+			Assert.assertEquals(3, store.size("a", Level.ALL.intValue()));
+			Assert.assertEquals(2, store.size("a", Level.WARNING.intValue()));
+			// cleared entries are subtracted
+			Assert.assertEquals(2, store.clear("a.x"));
+			Assert.assertEquals(1, store.size("a", Level.ALL.intValue()));
+			Assert.assertEquals(1, store.size("a", Level.WARNING.intValue()));
+			Assert.assertEquals(2, rows(url));
+
+			// trimmed entries are subtracted too, ids 1 to 3 are removed
+			store.append(Arrays.asList(event("a.x", Level.INFO, "5"), event("a.x", Level.INFO, "6"), event("b", Level.INFO, "7")));
+			Assert.assertEquals(3, rows(url));
+			Assert.assertEquals(2, store.size("a", Level.ALL.intValue()));
+			Assert.assertEquals(0, store.size("a", Level.WARNING.intValue()));
+			// the counter matches the database
+			store.unregister("a");
+			Assert.assertEquals(2, store.size("a", Level.ALL.intValue()));
+			Assert.assertEquals(0, store.size("a", Level.WARNING.intValue()));
+			Assert.assertEquals(3, store.size("", Level.ALL.intValue()));
+		}
+	}
+
+	@Test
+	public void exportTest() throws IOException, SQLException {
+		File directory = Files.createTempDirectory("export").toFile();
+		String file = new File(directory, "log").getAbsolutePath();
+		try (H2LogStore store = new H2LogStore("jdbc:h2:" + file, null, 100, 100, 10, 0, Durability.RECORD, 0, 0, 1, new CommitStatistics(), null)) {
+			store.open();
+			store.append(Arrays.asList(event("a", Level.INFO, "1"), event("a", Level.INFO, "2")));
+		}
+		try (Connection connection = DriverManager.getConnection("jdbc:h2:" + file); Statement statement = connection.createStatement()) {
+			LogCursor cursor = H2LogStore.export(file, 1);
+			int count = 0;
+			while (cursor.hasNext()) {
+				cursor.next();
+				count++;
+			}
+			Assert.assertEquals(2, count);
+			// the cursor closed its connection after the last entry
+			try (ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM INFORMATION_SCHEMA.SESSIONS")) {
+				Assert.assertTrue(resultSet.next());
+				Assert.assertEquals(1, resultSet.getInt(1));
+			}
+		} finally {
+			for (File f : directory.listFiles())
+				f.delete();
+			directory.delete();
+		}
+	}
+}
@@ -0,0 +1,54 @@
+package havis.util.core.common.log;
+
+import havis.util.core.log.LogLevel;
+
+import java.util.logging.Level;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LevelCountersTest {
+
+	private static long[] levels(int errors, int infos) {
+		long[] levels = new long[LogLevel.values().length];
+		levels[Util.valueOf(Level.SEVERE.intValue()).ordinal()] = errors;
+		levels[Util.valueOf(Level.INFO.intValue()).ordinal()] = infos;
+		return levels;
+	}
+
+	@Test
+	public void loadTest() {
+		LevelCounters counters = new LevelCounters();
+		counters.register("a");
+		Assert.assertEquals(-1, counters.size("a", Level.ALL.intValue()));
+		long[] pending = counters.begin("a");
+		Assert.assertTrue(counters.isActive());
+		// entries committed while loading are collected
+		counters.add("a.b", Level.SEVERE.intValue(), 1);
+		counters.add("b", Level.SEVERE.intValue(), 1);
+		Assert.assertTrue(counters.install("a", pending, levels(2, 3)));
+		Assert.assertEquals(6, counters.size("a", Level.ALL.intValue()));
+		Assert.assertEquals(3, counters.size("a", Level.SEVERE.intValue()));
+		counters.add("a", Level.INFO.intValue(), 1);
+		Assert.assertEquals(7, counters.size("a", Level.ALL.intValue()));
+		Assert.assertNull(counters.begin("a"));
+	}
+
+	@Test
+	public void abortTest() {
+		LevelCounters counters = new LevelCounters();
+		counters.register("a");
+		long[] pending = counters.begin("a");
+		// removed entries may or may not be counted by the load
+		counters.invalidate();
+		Assert.assertFalse(counters.install("a", pending, levels(1, 1)));
+		Assert.assertEquals(-1, counters.size("a", Level.ALL.intValue()));
+		Assert.assertFalse(counters.isActive());
+		// a new load succeeds
+		pending = counters.begin("a");
+		Assert.assertTrue(counters.install("a", pending, levels(1, 1)));
+		Assert.assertEquals(2, counters.size("a", Level.ALL.intValue()));
+		counters.unregister("a");
+		Assert.assertEquals(-1, counters.size("a", Level.ALL.intValue()));
+	}
+}
@@ -0,0 +1,101 @@
+package havis.util.core.common.log;
+
+import havis.util.core.log.LogEntry;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LogTierTest {
+
+	private static LogEvent event(String logger, Level level, String message) {
+		LogRecord record = new LogRecord(level, message);
+		record.setLoggerName(logger);
+		return new LogEvent(record, false);
+	}
+
+	private static List<String> messages(List<LogEntry> entries) {
+		List<String> messages = new ArrayList<>();
+		for (LogEntry entry : entries)
+			messages.add(entry.getMessage());
+		return messages;
+	}
+
+	private static void await(H2LogStore store, int size) throws IOException, InterruptedException {
+		// the tier inserts in the background
+		for (int i = 0; i < 100 && store.size("", Level.ALL.intValue()) < size; i++)
+			Thread.sleep(20);
+		Assert.assertEquals(size, store.size("", Level.ALL.intValue()));
+	}
+
+	@Test
+	public void mergeTest() throws IOException, InterruptedException {
+		LogTier tier = new LogTier("jdbc:h2:mem:tier_merge", Level.WARNING.intValue(), 100, 100, 10, new CommitStatistics(), new DropStatistics());
+		try (H2LogStore store = new H2LogStore("jdbc:h2:mem:store_merge", tier, 2, 2, 10, 0, Durability.RECORD, 0, 0, 1, new CommitStatistics(),
+				getClass().getClassLoader())) {
+			store.open();
+			store.append(Arrays.asList(event("a", Level.INFO, "1")));
+			store.append(Arrays.asList(event("a", Level.WARNING, "2")));
+			store.append(Arrays.asList(event("b", Level.SEVERE, "3")));
+			store.append(Arrays.asList(event("a", Level.INFO, "4")));
+			store.append(Arrays.asList(event("b", Level.WARNING, "5")));
+			// 4 and 5 are kept in memory, 2 and 3 only in the tier
+			await(store, 4);
+			Assert.assertEquals(Arrays.asList("2", "3", "4", "5"),
+					messages(store.get("", Level.ALL.intValue(), Long.MIN_VALUE, Long.MAX_VALUE, 0, 10, 0, Locale.US)));
+			Assert.assertEquals(Arrays.asList("2", "3", "5"),
+					messages(store.get("", Level.WARNING.intValue(), Long.MIN_VALUE, Long.MAX_VALUE, 0, 10, 0, Locale.US)));
+			Assert.assertEquals(Arrays.asList("2", "4"), messages(store.get("a", Level.ALL.intValue(), Long.MIN_VALUE, Long.MAX_VALUE, 0, 10, 0, Locale.US)));
+			// pages span both tiers
+			Assert.assertEquals(Arrays.asList("3", "4"), messages(store.get("", Level.ALL.intValue(), Long.MIN_VALUE, Long.MAX_VALUE, 0, 2, 1, Locale.US)));
+			Assert.assertEquals(Arrays.asList("5"), messages(store.get("", Level.ALL.intValue(), Long.MIN_VALUE, Long.MAX_VALUE, 0, 2, 3, Locale.US)));
+			Assert.assertEquals(Arrays.asList("4", "5"), messages(store.get("", Level.ALL.intValue(), Long.MIN_VALUE, Long.MAX_VALUE, 3, 10, 0, Locale.US)));
+			Assert.assertEquals(Arrays.asList("3", "4", "5"),
+					messages(store.get("", Level.ALL.intValue(), 0, System.currentTimeMillis() + 1, 2, 10, 0, Locale.US)));
+			Assert.assertEquals(4, store.size("", Level.ALL.intValue(), 0, System.currentTimeMillis() + 1));
+			try (LogCursor cursor = store.cursor("", Level.ALL.intValue(), Locale.US)) {
+				List<String> messages = new ArrayList<>();
+				while (cursor.hasNext())
+					messages.add(cursor.next().getMessage());
+				Assert.assertEquals(Arrays.asList("2", "3", "4", "5"), messages);
+			}
+			// entries are removed from both tiers
+			Assert.assertEquals(2, store.clear("b"));
+			Assert.assertEquals(2, store.clear("a"));
+			Assert.assertEquals(0, store.size("", Level.ALL.intValue()));
+		}
+	}
+
+	@Test
+	public void dropTest() throws SQLException {
+		String url = "jdbc:h2:mem:tier_drop";
+		DropStatistics drops = new DropStatistics();
+		try (Connection connection = DriverManager.getConnection(url)) {
+			LogTier tier = new LogTier(url, Level.WARNING.intValue(), 100, 100, 10, new CommitStatistics(), drops);
+			tier.open(getClass().getClassLoader());
+			try (Statement statement = connection.createStatement()) {
+				// the spilled ids exist already
+				statement.execute("INSERT INTO record (id, level) VALUES (1, 900)");
+			}
+			tier.spill(Arrays.asList(event("a", Level.INFO, "1"), event("a", Level.WARNING, "2"), event("b", Level.SEVERE, "3")), 0);
+			tier.close();
+			// entries below the tier level are not spilled
+			Map<String, Long> loggers = drops.getLoggers();
+			Assert.assertEquals(Long.valueOf(1), loggers.get("a"));
+			Assert.assertEquals(Long.valueOf(1), loggers.get("b"));
+			Assert.assertEquals(2, loggers.size());
+		}
+	}
+}
@@ -0,0 +1,47 @@
+package havis.util.core.common.log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ParameterCodecTest {
+
+	@Test
+	public void primitivesTest() {
+		Object[] parameters = new Object[] { null, "text \u00e4\u20ac", Integer.valueOf(-1), Integer.valueOf(Integer.MIN_VALUE), Long.valueOf(Long.MAX_VALUE),
+				Double.valueOf(-0.5), Float.valueOf(1.25f), Boolean.TRUE, Boolean.FALSE, Short.valueOf((short) -300), Byte.valueOf((byte) -1),
+				Character.valueOf('\u20ac') };
+		byte[] data = ParameterCodec.encode(parameters);
+		Assert.assertEquals(ParameterCodec.VERSION, data[0]);
+		Assert.assertArrayEquals(parameters, ParameterCodec.decode(data));
+	}
+
+	@Test
+	public void compactTest() {
+		// version, count, tag and one byte varint
+		Assert.assertEquals(4, ParameterCodec.encode(new Object[] { Integer.valueOf(7) }).length);
+		Assert.assertEquals(0, ParameterCodec.decode(ParameterCodec.encode(new Object[0])).length);
+	}
+
+	@Test
+	public void jsonTest() {
+		List<String> list = new ArrayList<>(Arrays.asList("a", "b"));
+		Object[] parameters = new Object[] { list, TimeUnit.SECONDS };
+		Object[] result = ParameterCodec.decode(ParameterCodec.encode(parameters));
+		Assert.assertEquals(list, result[0]);
+		Assert.assertEquals(TimeUnit.SECONDS, result[1]);
+	}
+
+	@Test
+	public void invalidTest() {
+		Assert.assertNull(ParameterCodec.encode(null));
+		Assert.assertNull(ParameterCodec.decode(null));
+		Assert.assertNull(ParameterCodec.decode(new byte[] { 0 }));
+		Assert.assertNull(ParameterCodec.decode(new byte[] { ParameterCodec.VERSION, 5, ParameterCodec.STRING }));
+		Assert.assertNull(ParameterCodec.decode(new byte[] { ParameterCodec.VERSION, 1, 99 }));
+	}
+}
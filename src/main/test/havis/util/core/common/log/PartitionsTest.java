@@ -0,0 +1,146 @@
+package havis.util.core.common.log;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.Locale;
+import java.util.logging.Level;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PartitionsTest {
+
+	private final static long INTERVAL = 60000;
+
+	private static void insert(Connection connection, Partitions partitions, long id, long millis) throws SQLException {
+		try (PreparedStatement statement = connection.prepareStatement("INSERT INTO " + partitions.getTable()
+				+ " (id, millis, logger_id, level, message, thread) VALUES (?, ?, 1, 800, 'Message', 1)")) {
+			statement.setLong(1, id);
+			statement.setTimestamp(2, new Timestamp(millis));
+			statement.execute();
+		}
+		partitions.update(connection, millis);
+		connection.commit();
+	}
+
+	private static boolean exists(Connection connection, String table) throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			try (ResultSet resultSet = statement.executeQuery(String.format(Schema.IS_TABLE, table.toUpperCase()))) {
+				return resultSet.next() && resultSet.getInt(1) > 0;
+			}
+		}
+	}
+
+	@Test
+	public void partitionTest() throws SQLException {
+		try (Connection connection = DriverManager.getConnection("jdbc:h2:mem:partitions")) {
+			connection.setAutoCommit(false);
+			Schema.migrate(connection);
+			try (Statement statement = connection.createStatement()) {
+				statement.execute("INSERT INTO logger_dict (name) VALUES ('a')");
+				connection.commit();
+			}
+			Partitions partitions = new Partitions(INTERVAL, 10);
+			partitions.load(connection);
+			Assert.assertEquals("record_0", partitions.getTable());
+
+			long now = System.currentTimeMillis();
+			insert(connection, partitions, 1, now);
+			insert(connection, partitions, 2, now);
+			Assert.assertFalse(partitions.isDue(now));
+			long later = now + 2 * INTERVAL;
+			Assert.assertTrue(partitions.rollover(connection, 3, later));
+			String second = partitions.getTable();
+			Assert.assertEquals("record_" + (later - later % INTERVAL), second);
+			insert(connection, partitions, 3, later);
+			insert(connection, partitions, 4, later);
+			Assert.assertEquals(3, partitions.next(1));
+			Assert.assertEquals(Long.MAX_VALUE, partitions.next(3));
+
+			// the view covers all partitions
+			Assert.assertEquals(4, partitions.size(connection, "", Level.ALL.intValue(), Long.MIN_VALUE, Long.MAX_VALUE, 0, Long.MAX_VALUE));
+			Assert.assertEquals(2, partitions.size(connection, "", Level.ALL.intValue(), later, Long.MAX_VALUE, 0, Long.MAX_VALUE));
+			Assert.assertEquals(1, partitions.get(connection, "", Level.ALL.intValue(), Long.MIN_VALUE, Long.MAX_VALUE, 1, 3, 1, 0, Locale.US).size());
+
+			// only partitions overlapping the range are read, a record
+			// created after the following partition is not found
+			insert(connection, partitions, 5, later);
+			try (Statement statement = connection.createStatement()) {
+				statement.execute("UPDATE record_0 SET millis = '" + new Timestamp(later) + "' WHERE id = 2");
+				statement.execute("INSERT INTO record_0 (id, millis, logger_id, level, message, thread) VALUES (0, '" + new Timestamp(later)
+						+ "', 1, 800, 'Late', 1)");
+				connection.commit();
+			}
+			Assert.assertEquals(3, partitions.size(connection, "", Level.ALL.intValue(), later, Long.MAX_VALUE, 0, Long.MAX_VALUE));
+			Assert.assertEquals(1, partitions.size(connection, "", Level.ALL.intValue(), Long.MIN_VALUE, later, 0, Long.MAX_VALUE));
+			Assert.assertEquals(0, partitions.size(connection, "", Level.ALL.intValue(), Long.MIN_VALUE, now, 0, Long.MAX_VALUE));
+
+			// the first partition expires once the second one is older
+			Assert.assertEquals(0, partitions.expired(later - INTERVAL, later));
+			Assert.assertEquals(3, partitions.expired(later, later));
+			// the oldest partition is dropped as a whole
+			Assert.assertEquals(3, partitions.truncate(connection, 3));
+			connection.commit();
+			Assert.assertFalse(exists(connection, "record_0"));
+			Assert.assertEquals(second, partitions.getTable());
+			Assert.assertEquals(3, partitions.size(connection, "", Level.ALL.intValue(), Long.MIN_VALUE, Long.MAX_VALUE, 0, Long.MAX_VALUE));
+			// the remaining records are deleted row by row
+			Assert.assertEquals(1, partitions.truncate(connection, 4));
+			connection.commit();
+			Assert.assertTrue(exists(connection, second));
+			Assert.assertEquals(2, partitions.size(connection, "", Level.ALL.intValue(), Long.MIN_VALUE, Long.MAX_VALUE, 0, Long.MAX_VALUE));
+			Assert.assertEquals(2, partitions.clear(connection, "a"));
+			connection.commit();
+
+			// partitions are restored from the catalog
+			Partitions loaded = new Partitions(INTERVAL, 10);
+			loaded.load(connection);
+			Assert.assertEquals(second, loaded.getTable());
+			Assert.assertEquals(Long.MAX_VALUE, loaded.next(4));
+		}
+	}
+
+	@Test
+	public void unpartitionedTest() throws SQLException {
+		try (Connection connection = DriverManager.getConnection("jdbc:h2:mem:unpartitioned")) {
+			connection.setAutoCommit(false);
+			Schema.migrate(connection);
+			Partitions partitions = new Partitions(0, 10);
+			partitions.load(connection);
+			Assert.assertEquals(Partitions.RECORD, partitions.getTable());
+			Assert.assertFalse(partitions.isDue(System.currentTimeMillis() + INTERVAL));
+			Assert.assertEquals(0, partitions.expired(Long.MAX_VALUE, Long.MAX_VALUE));
+		}
+	}
+
+	@Test
+	public void maxTest() throws SQLException {
+		try (Connection connection = DriverManager.getConnection("jdbc:h2:mem:partitions_max")) {
+			connection.setAutoCommit(false);
+			Schema.migrate(connection);
+			Partitions partitions = new Partitions(INTERVAL, 2);
+			partitions.load(connection);
+			long now = System.currentTimeMillis();
+			insert(connection, partitions, 1, now);
+			long later = now + 2 * INTERVAL;
+			Assert.assertTrue(partitions.rollover(connection, 2, later));
+			insert(connection, partitions, 2, later);
+			// the current partition is kept until its interval elapsed
+			Assert.assertEquals(0, partitions.expired(Long.MIN_VALUE, later));
+			long next = later + 2 * INTERVAL;
+			// the maximum is reached, the oldest partition expires instead
+			Assert.assertFalse(partitions.isDue(next));
+			Assert.assertEquals(2, partitions.expired(Long.MIN_VALUE, next));
+			Assert.assertEquals(1, partitions.truncate(connection, 2));
+			connection.commit();
+			Assert.assertTrue(partitions.isDue(next));
+			Assert.assertTrue(partitions.rollover(connection, 3, next));
+			Assert.assertEquals("record_" + (next - next % INTERVAL), partitions.getTable());
+		}
+	}
+}
@@ -0,0 +1,30 @@
+package havis.util.core.common.log;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RateLimitsTest {
+
+	@Test
+	public void acquireTest() {
+		RateLimits limits = new RateLimits();
+		Assert.assertTrue(limits.acquire("a.b"));
+		limits.set("a", 0.001, 3);
+		limits.set("a.c", 0.001, 1);
+		for (int i = 0; i < 3; i++)
+			Assert.assertTrue(limits.acquire("a.b"));
+		Assert.assertFalse(limits.acquire("a.b"));
+		// each logger has its own bucket
+		Assert.assertTrue(limits.acquire("a.d"));
+		// the longest target name wins
+		Assert.assertTrue(limits.acquire("a.c"));
+		Assert.assertFalse(limits.acquire("a.c"));
+		Assert.assertTrue(limits.acquire("b"));
+
+		limits.remove("a");
+		Assert.assertTrue(limits.acquire("a.b"));
+		Assert.assertTrue(limits.acquire("a.b"));
+		Assert.assertTrue(limits.acquire("a.c"));
+		Assert.assertFalse(limits.acquire("a.c"));
+	}
+}
@@ -0,0 +1,141 @@
+package havis.util.core.common.log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RingLogQueueTest {
+
+	@Test
+	public void capacityTest() {
+		Assert.assertEquals(2, new RingLogQueue<String>(1, WaitStrategy.PARK).capacity());
+		Assert.assertEquals(8, new RingLogQueue<String>(8, WaitStrategy.PARK).capacity());
+		Assert.assertEquals(16, new RingLogQueue<String>(9, WaitStrategy.PARK).capacity());
+	}
+
+	@Test
+	public void offerTest() throws InterruptedException {
+		RingLogQueue<String> queue = new RingLogQueue<>(4, WaitStrategy.PARK);
+		for (int i = 0; i < 4; i++)
+			Assert.assertTrue(queue.offer("" + i));
+		Assert.assertFalse(queue.offer("4"));
+		Assert.assertEquals(0, queue.remainingCapacity());
+		// producers evict the oldest element
+		Assert.assertEquals("0", queue.evict());
+		Assert.assertTrue(queue.offer("4"));
+
+		Assert.assertEquals("1", queue.take());
+		Assert.assertTrue(queue.offer("5"));
+
+		List<String> list = new ArrayList<>();
+		Assert.assertEquals(3, queue.drainTo(list, 3));
+		Assert.assertEquals("2", list.get(0));
+		Assert.assertEquals("4", list.get(2));
+		Assert.assertEquals("5", queue.poll(0, TimeUnit.MILLISECONDS));
+		Assert.assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+		Assert.assertNull(queue.evict());
+	}
+
+	@Test
+	public void wakeupTest() throws InterruptedException {
+		final RingLogQueue<String> queue = new RingLogQueue<>(4, WaitStrategy.PARK);
+		new Thread() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(50);
+				} catch (InterruptedException e) {
+				}
+				queue.wakeup();
+			}
+		}.start();
+		Assert.assertNull(queue.take());
+	}
+
+	@Test
+	public void producersTest() throws InterruptedException {
+		for (WaitStrategy strategy : WaitStrategy.values()) {
+			final RingLogQueue<Integer> queue = new RingLogQueue<>(64, strategy);
+			final int producers = 4, count = 10000;
+			for (int p = 0; p < producers; p++) {
+				final int offset = p * count;
+				new Thread() {
+					@Override
+					public void run() {
+						try {
+							for (int i = 0; i < count; i++)
+								Assert.assertTrue(queue.offer(Integer.valueOf(offset + i), 10, TimeUnit.SECONDS));
+						} catch (InterruptedException e) {
+						}
+					}
+				}.start();
+			}
+
+			boolean[] seen = new boolean[producers * count];
+			int[] last = new int[producers];
+			for (int p = 0; p < producers; p++)
+				last[p] = -1;
+			for (int i = 0; i < producers * count; i++) {
+				Integer value = queue.poll(10, TimeUnit.SECONDS);
+				Assert.assertNotNull(value);
+				Assert.assertFalse(seen[value.intValue()]);
+				seen[value.intValue()] = true;
+				// order per producer is preserved
+				int p = value.intValue() / count;
+				Assert.assertTrue(value.intValue() % count > last[p]);
+				last[p] = value.intValue() % count;
+			}
+			Assert.assertNull(queue.poll(0, TimeUnit.MILLISECONDS));
+		}
+	}
+
+	@Test
+	public void evictTest() throws InterruptedException {
+		final RingLogQueue<Integer> queue = new RingLogQueue<>(16, WaitStrategy.PARK);
+		final int producers = 4, count = 10000;
+		final int[] removed = new int[producers * count];
+		List<Thread> threads = new ArrayList<>();
+		for (int p = 0; p < producers; p++) {
+			final int offset = p * count;
+			Thread thread = new Thread() {
+				@Override
+				public void run() {
+					for (int i = 0; i < count; i++) {
+						Integer value = Integer.valueOf(offset + i);
+						while (!queue.offer(value)) {
+							Integer oldest = queue.evict();
+							if (oldest != null)
+								synchronized (removed) {
+									removed[oldest.intValue()]++;
+								}
+						}
+					}
+				}
+			};
+			threads.add(thread);
+			thread.start();
+		}
+		boolean alive = true;
+		while (alive) {
+			Integer value = queue.poll(10, TimeUnit.MILLISECONDS);
+			if (value != null)
+				synchronized (removed) {
+					removed[value.intValue()]++;
+				}
+			alive = false;
+			for (Thread thread : threads)
+				alive |= thread.isAlive();
+		}
+		for (Thread thread : threads)
+			thread.join();
+		Integer value;
+		while ((value = queue.poll(0, TimeUnit.MILLISECONDS)) != null)
+			removed[value.intValue()]++;
+		// each element is either consumed or evicted exactly once
+		for (int i = 0; i < removed.length; i++)
+			Assert.assertEquals(1, removed[i]);
+	}
+}
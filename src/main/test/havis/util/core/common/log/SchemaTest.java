@@ -0,0 +1,118 @@
+package havis.util.core.common.log;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.logging.Level;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SchemaTest {
+
+	private static Connection open(String name) throws SQLException {
+		Connection connection = DriverManager.getConnection("jdbc:h2:mem:" + name);
+		connection.setAutoCommit(false);
+		return connection;
+	}
+
+	/**
+	 * Creates a database of version one, which has no version table
+	 */
+	private static void createVersion1(Connection connection) throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("CREATE TABLE record (id SERIAL NOT NULL PRIMARY KEY, millis DATETIME, logger TEXT, class TEXT, method TEXT, level INT, message TEXT, parameters TEXT, thrown TEXT, thread INT)");
+			statement.execute("INSERT INTO record (millis, logger, class, method, level, message, thread) VALUES (CURRENT_TIMESTAMP(), 'a.b', 'A', 'run', "
+					+ Level.INFO.intValue() + ", 'First', 1)");
+			statement.execute("INSERT INTO record (millis, logger, class, method, level, message, thread) VALUES (CURRENT_TIMESTAMP(), 'a.b', 'A', NULL, "
+					+ Level.SEVERE.intValue() + ", 'Second', 1)");
+			statement.execute("INSERT INTO record (millis, logger, class, method, level, message, thread) VALUES (CURRENT_TIMESTAMP(), 'c', NULL, NULL, "
+					+ Level.WARNING.intValue() + ", 'Third', 2)");
+			connection.commit();
+		}
+	}
+
+	private static int count(Statement statement, String sql) throws SQLException {
+		try (ResultSet resultSet = statement.executeQuery(sql)) {
+			resultSet.next();
+			return resultSet.getInt(1);
+		}
+	}
+
+	private static void assertMigrated(Connection connection) throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			Assert.assertEquals(Schema.VERSION, Schema.getVersion(connection));
+			Assert.assertEquals(2, count(statement, "SELECT COUNT(*) FROM logger_dict"));
+			Assert.assertEquals(2, count(statement, "SELECT COUNT(*) FROM source_dict"));
+			Assert.assertEquals(2, count(statement, "SELECT COUNT(*) FROM record r JOIN logger_dict l ON r.logger_id = l.id WHERE l.name = 'a.b'"));
+			Assert.assertEquals(1, count(statement, "SELECT COUNT(*) FROM record r JOIN source_dict s ON r.source_id = s.id WHERE s.class = 'A' AND s.method IS NULL"));
+			Assert.assertEquals(1, count(statement, "SELECT COUNT(*) FROM record WHERE source_id IS NULL"));
+			Assert.assertEquals(0, count(statement, "SELECT COUNT(*) FROM INFORMATION_SCHEMA.COLUMNS WHERE TABLE_NAME = 'RECORD' AND COLUMN_NAME = 'LOGGER'"));
+		}
+	}
+
+	@Test
+	public void migrateTest() throws SQLException {
+		try (Connection connection = open("migrate")) {
+			createVersion1(connection);
+			Schema.migrate(connection);
+			assertMigrated(connection);
+			// migrating again changes nothing
+			Schema.migrate(connection);
+			assertMigrated(connection);
+		}
+	}
+
+	@Test
+	public void rerunTest() throws SQLException {
+		try (Connection connection = open("rerun")) {
+			createVersion1(connection);
+			Schema.migrate(connection, 2);
+			// step three interrupted after the logger dictionary was created
+			try (Statement statement = connection.createStatement()) {
+				statement.execute("CREATE TABLE logger_dict (id INT AUTO_INCREMENT PRIMARY KEY, name VARCHAR NOT NULL)");
+				statement.execute("CREATE UNIQUE INDEX logger_dict_name ON logger_dict (name)");
+				statement.execute("INSERT INTO logger_dict (name) VALUES ('a.b')");
+				connection.commit();
+			}
+			Schema.migrate(connection, 5);
+			// step six interrupted after the first column was dropped
+			try (Statement statement = connection.createStatement()) {
+				statement.execute("DROP INDEX record_logger_level");
+				statement.execute("ALTER TABLE record DROP COLUMN logger");
+				connection.commit();
+			}
+			Assert.assertEquals(5, Schema.getVersion(connection));
+			Schema.migrate(connection);
+			assertMigrated(connection);
+		}
+	}
+
+	@Test
+	public void selectAllTest() throws SQLException {
+		try (Connection connection = open("select")) {
+			createVersion1(connection);
+			Assert.assertEquals(1, Schema.getVersion(connection));
+			try (LogCursor cursor = new LogCursor(connection.prepareStatement(Schema.getSelectAll(1)), 10, null)) {
+				Assert.assertEquals("a.b", cursor.next().getLogger());
+				Assert.assertEquals("A", cursor.next().getSourceClass());
+				Assert.assertEquals("Third", cursor.next().getMessage());
+				Assert.assertFalse(cursor.hasNext());
+			}
+			// reading does not create the version table
+			Assert.assertEquals(1, Schema.getVersion(connection));
+			try (Statement statement = connection.createStatement()) {
+				Assert.assertEquals(0, count(statement, "SELECT COUNT(*) FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_NAME = 'SCHEMA_VERSION'"));
+			}
+			Schema.migrate(connection);
+			try (LogCursor cursor = new LogCursor(connection.prepareStatement(Schema.getSelectAll(Schema.getVersion(connection))), 10, null)) {
+				Assert.assertEquals("a.b", cursor.next().getLogger());
+				Assert.assertNull(cursor.next().getSourceMethod());
+				Assert.assertEquals("c", cursor.next().getLogger());
+				Assert.assertFalse(cursor.hasNext());
+			}
+		}
+	}
+}
@@ -0,0 +1,68 @@
+package havis.util.core.common.log;
+
+import havis.util.core.log.LogEntry;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SearchIndexTest {
+
+	@Test
+	public void tokenizeTest() {
+		Set<String> tokens = new LinkedHashSet<>();
+		SearchIndex.tokenize("Failed to open /dev/ttyS0: a B \u00c4rger", tokens);
+		Assert.assertEquals(new LinkedHashSet<>(Arrays.asList("failed", "to", "open", "dev", "ttys0", "\u00e4rger")), tokens);
+	}
+
+	@Test
+	public void eventTest() {
+		LogRecord record = new LogRecord(Level.WARNING, "Reader {0} lost connection");
+		record.setParameters(new Object[] { "Antenna" });
+		record.setThrown(new IOException("Broken pipe"));
+		Set<String> tokens = SearchIndex.tokenize(new LogEvent(record, false));
+		Assert.assertTrue(tokens.containsAll(Arrays.asList("reader", "lost", "connection", "antenna", "ioexception", "broken", "pipe")));
+		// placeholders and stack frames are not indexed
+		Assert.assertFalse(tokens.contains("0"));
+		Assert.assertFalse(tokens.contains("eventtest"));
+	}
+
+	@Test
+	public void invalidParametersTest() {
+		Set<String> tokens = SearchIndex.tokenize("Reader lost", new byte[] { -1, 2, 3 }, null);
+		Assert.assertEquals(new LinkedHashSet<>(Arrays.asList("reader", "lost")), tokens);
+	}
+
+	@Test
+	public void scanTest() throws SQLException {
+		try (Connection connection = DriverManager.getConnection("jdbc:h2:mem:scan")) {
+			Schema.migrate(connection);
+			try (Statement statement = connection.createStatement()) {
+				statement.execute("INSERT INTO logger_dict (name) VALUES ('a')");
+				statement.execute("INSERT INTO record (millis, logger_id, level, message, thread) VALUES (CURRENT_TIMESTAMP(), 1, 800, 'Reader lost connection', 1)");
+				statement.execute("INSERT INTO record (millis, logger_id, level, message, thread) VALUES (CURRENT_TIMESTAMP(), 1, 800, 'Connection to reader established', 1)");
+				statement.execute("INSERT INTO record (millis, logger_id, level, message, thrown, thread) VALUES (CURRENT_TIMESTAMP(), 1, 800, 'Reader failed', 'Connection lost', 1)");
+				connection.commit();
+			}
+			// all words have to be contained in any order, not the whole query
+			List<LogEntry> entries = SearchIndex.search(connection, false, "a", 0, "lost reader", Long.MAX_VALUE, 10, Locale.US);
+			Assert.assertEquals(2, entries.size());
+			Assert.assertEquals("Reader failed", entries.get(0).getMessage());
+			Assert.assertEquals("Reader lost connection", entries.get(1).getMessage());
+			Assert.assertEquals(3, SearchIndex.search(connection, false, "a", 0, "READER connection", Long.MAX_VALUE, 10, Locale.US).size());
+			Assert.assertEquals(0, SearchIndex.search(connection, false, "a", 0, "reader timeout", Long.MAX_VALUE, 10, Locale.US).size());
+		}
+	}
+}
@@ -0,0 +1,141 @@
+package havis.util.core.common.log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SegmentLogStoreTest {
+
+	private static LogEvent event(String logger, Level level, String message) {
+		LogRecord record = new LogRecord(level, message);
+		record.setLoggerName(logger);
+		return new LogEvent(record, false);
+	}
+
+	private static SegmentLogStore open(File directory) throws IOException {
+		SegmentLogStore store = new SegmentLogStore(directory, 256, 1000, 0, Durability.GROUP, 0, 0, 1, new CommitStatistics());
+		store.open();
+		return store;
+	}
+
+	@Test
+	public void appendTest() throws IOException {
+		File directory = Files.createTempDirectory("segment").toFile();
+		try (SegmentLogStore store = open(directory)) {
+			List<LogEvent> events = new ArrayList<>();
+			for (int i = 0; i < 20; i++)
+				events.add(event(i % 2 == 0 ? "a.b" : "c", i % 4 == 0 ? Level.SEVERE : Level.INFO, "Message " + i));
+			store.append(events);
+			// small segments are rolled over
+			Assert.assertTrue(directory.list().length > 1);
+			Assert.assertEquals(20, store.size("", Level.ALL.intValue()));
+			Assert.assertEquals(10, store.size("a", Level.ALL.intValue()));
+			Assert.assertEquals(5, store.size("a", Level.SEVERE.intValue()));
+			Assert.assertEquals(10, store.size("a", Level.ALL.intValue(), Long.MIN_VALUE, Long.MAX_VALUE));
+			Assert.assertEquals(5, store.get("", Level.ALL.intValue(), Long.MIN_VALUE, Long.MAX_VALUE, 0, 5, 0, Locale.US).size());
+			Assert.assertEquals(2, store.get("", Level.ALL.intValue(), Long.MIN_VALUE, Long.MAX_VALUE, 18, 5, 0, Locale.US).size());
+			Assert.assertEquals(3, store.get("c", Level.ALL.intValue(), Long.MIN_VALUE, Long.MAX_VALUE, 0, 5, 7, Locale.US).size());
+			Assert.assertEquals(1, store.search("", Level.ALL.intValue(), "message 13", 10, Locale.US).size());
+		}
+		// records are recovered on open
+		try (SegmentLogStore store = open(directory)) {
+			Assert.assertEquals(20, store.size("", Level.ALL.intValue()));
+			store.append(Arrays.asList(event("c", Level.INFO, "Message 20")));
+			Assert.assertEquals(1, store.get("", Level.ALL.intValue(), Long.MIN_VALUE, Long.MAX_VALUE, 20, 5, 0, Locale.US).size());
+			Assert.assertEquals(11, store.clear("c"));
+			Assert.assertEquals(10, store.size("", Level.ALL.intValue()));
+		}
+		// cleared entries remain hidden
+		try (SegmentLogStore store = open(directory)) {
+			Assert.assertEquals(10, store.size("", Level.ALL.intValue()));
+			Assert.assertEquals(0, store.get("c", Level.ALL.intValue(), Long.MIN_VALUE, Long.MAX_VALUE, 0, 5, 0, Locale.US).size());
+		} finally {
+			for (File file : directory.listFiles())
+				file.delete();
+			directory.delete();
+		}
+	}
+
+	@Test
+	public void indexTest() throws IOException {
+		File directory = Files.createTempDirectory("segment").toFile();
+		try (SegmentLogStore store = new SegmentLogStore(directory, 1 << 20, 1000, 0, Durability.ASYNC, 0, 0, 1, new CommitStatistics())) {
+			store.open();
+			List<LogEvent> events = new ArrayList<>();
+			for (int i = 0; i < 300; i++)
+				events.add(event("a", Level.INFO, "Message " + i));
+			store.append(events);
+			long millis = events.get(0).getMillis();
+			Assert.assertEquals(100, store.get("a", Level.ALL.intValue(), Long.MIN_VALUE, Long.MAX_VALUE, 200, 1000, 0, Locale.US).size());
+			Assert.assertEquals(300, store.size("a", Level.ALL.intValue(), millis, Long.MAX_VALUE));
+			Assert.assertEquals(0, store.size("a", Level.ALL.intValue(), Long.MIN_VALUE, millis));
+			Assert.assertEquals(10, store.search("a", Level.ALL.intValue(), "message", 10, Locale.US).size());
+		} finally {
+			for (File file : directory.listFiles())
+				file.delete();
+			directory.delete();
+		}
+	}
+
+	@Test
+	public void retentionTest() throws IOException {
+		File directory = Files.createTempDirectory("segment").toFile();
+		try (SegmentLogStore store = new SegmentLogStore(directory, 256, 10, 0, Durability.ASYNC, 0, 0, 1, new CommitStatistics())) {
+			store.open();
+			for (int i = 0; i < 100; i++)
+				store.append(Arrays.asList(event("a", Level.INFO, "Message " + i)));
+			// whole segments are deleted, at least the maximum number remains
+			int size = store.size("a", Level.ALL.intValue());
+			Assert.assertTrue(size >= 10 && size < 20);
+		} finally {
+			for (File file : directory.listFiles())
+				file.delete();
+			directory.delete();
+		}
+	}
+
+	@Test
+	public void emptyTest() throws IOException {
+		File directory = Files.createTempDirectory("segment").toFile();
+		try (SegmentLogStore store = new SegmentLogStore(directory, 256, 10, 0, Durability.RECORD, 0, 0, 1, new CommitStatistics())) {
+			store.open();
+			// nothing pending, the worker waits without timeout
+			Assert.assertEquals(-1, store.getTimeout());
+			// the worker appends nothing on wake up
+			store.append(new ArrayList<LogEvent>());
+			Assert.assertEquals(0, store.size("", Level.ALL.intValue()));
+			store.append(Arrays.asList(event("a", Level.INFO, "Message")));
+			Assert.assertEquals(-1, store.getTimeout());
+			Assert.assertEquals(1, store.size("", Level.ALL.intValue()));
+		} finally {
+			for (File file : directory.listFiles())
+				file.delete();
+			directory.delete();
+		}
+	}
+
+	@Test
+	public void timeoutTest() throws IOException {
+		File directory = Files.createTempDirectory("segment").toFile();
+		try (SegmentLogStore store = new SegmentLogStore(directory, 256, 10, 0, Durability.GROUP, 0, 60000, 10, new CommitStatistics())) {
+			store.open();
+			store.append(Arrays.asList(event("a", Level.INFO, "Message")));
+			// the pending group is written once the interval elapsed
+			long timeout = store.getTimeout();
+			Assert.assertTrue(timeout > 0 && timeout <= 60000);
+		} finally {
+			for (File file : directory.listFiles())
+				file.delete();
+			directory.delete();
+		}
+	}
+}
@@ -0,0 +1,74 @@
+package havis.util.core.common.log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SuppressorTest {
+
+	private static LogRecord record(String logger, String message, long millis) {
+		LogRecord record = new LogRecord(Level.WARNING, message);
+		record.setLoggerName(logger);
+		record.setMillis(millis);
+		return record;
+	}
+
+	@Test
+	public void acceptTest() {
+		Suppressor suppressor = new Suppressor(1000);
+		Assert.assertTrue(suppressor.accept(record("a", "Connection lost", 0)));
+		Assert.assertFalse(suppressor.accept(record("a", "Connection lost", 10)));
+		Assert.assertFalse(suppressor.accept(record("a", "Connection lost", 20)));
+		// other logger or pattern
+		Assert.assertTrue(suppressor.accept(record("b", "Connection lost", 30)));
+		Assert.assertTrue(suppressor.accept(record("a", "Connected", 40)));
+
+		List<LogEvent> events = new ArrayList<>();
+		suppressor.expire(500, events);
+		Assert.assertTrue(events.isEmpty());
+		suppressor.expire(1000, events);
+		Assert.assertEquals(1, events.size());
+		Assert.assertEquals("Connection lost (repeated 2 times)", events.get(0).getMessage());
+		Assert.assertEquals(20, events.get(0).getMillis());
+
+		// a new window is opened after expiry
+		Assert.assertTrue(suppressor.accept(record("a", "Connection lost", 1100)));
+	}
+
+	@Test
+	public void reopenTest() {
+		Suppressor suppressor = new Suppressor(1000);
+		Assert.assertTrue(suppressor.accept(record("a", "Connection lost", 0)));
+		Assert.assertFalse(suppressor.accept(record("a", "Connection lost", 10)));
+		// the window is closed by the next record after expiry
+		Assert.assertTrue(suppressor.accept(record("a", "Connection lost", 1010)));
+		Assert.assertFalse(suppressor.accept(record("a", "Connection lost", 1020)));
+		List<LogEvent> events = new ArrayList<>();
+		suppressor.expire(1500, events);
+		Assert.assertEquals(1, events.size());
+		Assert.assertEquals("Connection lost (repeated 1 times)", events.get(0).getMessage());
+	}
+
+	@Test
+	public void parametersTest() {
+		Suppressor suppressor = new Suppressor(1000);
+		LogRecord record = record("a", "Reader {0} lost connection", 0);
+		record.setParameters(new Object[] { "A" });
+		Assert.assertTrue(suppressor.accept(record));
+		record = record("a", "Reader {0} lost connection", 10);
+		record.setParameters(new Object[] { "B" });
+		record.setThrown(new IllegalStateException("Broken pipe"));
+		Assert.assertFalse(suppressor.accept(record));
+		List<LogEvent> events = new ArrayList<>();
+		suppressor.expire(1000, events);
+		Assert.assertEquals(1, events.size());
+		// the parameters of the last repetition are rendered
+		Assert.assertEquals("Reader B lost connection (repeated 1 times)", events.get(0).getMessage());
+		Assert.assertNull(events.get(0).getParameters());
+		Assert.assertTrue(events.get(0).getThrown().contains("Broken pipe"));
+	}
+}
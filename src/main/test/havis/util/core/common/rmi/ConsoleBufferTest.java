@@ -0,0 +1,55 @@
+package havis.util.core.common.rmi;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ConsoleBufferTest {
+
+	@Test
+	public void limitTest() {
+		ConsoleBuffer buffer = new ConsoleBuffer(3, 10);
+		Assert.assertEquals("", buffer.appendTo(new StringBuilder(), "\n").toString());
+		buffer.add("a");
+		buffer.add("b");
+		buffer.add("c");
+		buffer.add("d");
+		// line limit
+		Assert.assertEquals(3, buffer.lines());
+		Assert.assertEquals("b\nc\nd\n", buffer.appendTo(new StringBuilder(), "\n").toString());
+		// size limit
+		buffer.add("efghijklm");
+		Assert.assertEquals(2, buffer.lines());
+		Assert.assertEquals("d|efghijklm|", buffer.appendTo(new StringBuilder(), "|").toString());
+		// long lines are truncated
+		buffer.add("0123456789abc");
+		Assert.assertEquals(1, buffer.lines());
+		Assert.assertEquals(">0123456789", buffer.appendTo(new StringBuilder(">"), "").toString());
+	}
+
+	@Test
+	public void snapshotTest() throws InterruptedException {
+		final ConsoleBuffer buffer = new ConsoleBuffer(16, 1024);
+		final AtomicReference<String> error = new AtomicReference<>();
+		Thread reader = new Thread() {
+			@Override
+			public void run() {
+				while (!isInterrupted()) {
+					String[] lines = buffer.appendTo(new StringBuilder(), "\n").toString().split("\n");
+					// the lines of a snapshot are consecutive
+					for (int i = 1; i < lines.length; i++)
+						if (Integer.parseInt(lines[i]) != Integer.parseInt(lines[i - 1]) + 1)
+							error.set(lines[i - 1] + " " + lines[i]);
+				}
+			}
+		};
+		reader.start();
+		for (int i = 0; i < 200000; i++)
+			buffer.add(Integer.toString(i));
+		reader.interrupt();
+		reader.join();
+		Assert.assertNull(error.get());
+		Assert.assertEquals(16, buffer.lines());
+	}
+}